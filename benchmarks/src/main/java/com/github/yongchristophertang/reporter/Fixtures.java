@@ -0,0 +1,161 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter;
+
+import com.github.yongchristophertang.reporter.annotation.Bug;
+import com.github.yongchristophertang.reporter.annotation.TestCase;
+import org.testng.IInvokedMethod;
+import org.testng.ISuite;
+import org.testng.ITestClass;
+import org.testng.ITestNGMethod;
+import org.testng.ITestResult;
+import org.testng.Reporter;
+import org.testng.internal.ConstructorOrMethod;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Plain TestNG model objects standing in for a real test run. They are dynamic proxies answering from fixed values,
+ * so that the cost of a mock framework does not show in measurements.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+final class Fixtures {
+    private static final AtomicInteger ids = new AtomicInteger();
+
+    private Fixtures() {
+    }
+
+    /**
+     * An invoked test method having logged {@code outputLines} lines of {@code outputLineLength} characters.
+     */
+    static IInvokedMethod invokedMethod(Method method, int outputLines, int outputLineLength) {
+        Map<String, Object> testClass = new HashMap<>();
+        testClass.put("getName", method.getDeclaringClass().getName());
+        testClass.put("getRealClass", method.getDeclaringClass());
+
+        Map<String, Object> testMethod = new HashMap<>();
+        testMethod.put("getMethodName", method.getName());
+        testMethod.put("getConstructorOrMethod", new ConstructorOrMethod(method));
+        testMethod.put("getTestClass", stub(ITestClass.class, testClass));
+        ITestNGMethod testNGMethod = stub(ITestNGMethod.class, testMethod);
+
+        long start = System.currentTimeMillis();
+        Map<String, Object> testResult = new HashMap<>();
+        testResult.put("id", "benchmark-" + ids.incrementAndGet());
+        testResult.put("getMethod", testNGMethod);
+        testResult.put("getTestName", "benchmark");
+        testResult.put("getStatus", ITestResult.SUCCESS);
+        testResult.put("getStartMillis", start);
+        testResult.put("getEndMillis", start + 42);
+        ITestResult result = stub(ITestResult.class, testResult);
+
+        Reporter.setCurrentTestResult(result);
+        String line = line(outputLineLength);
+        for (int i = 0; i < outputLines; i++) {
+            Reporter.log(line);
+        }
+        Reporter.setCurrentTestResult(null);
+
+        Map<String, Object> invoked = new HashMap<>();
+        invoked.put("getTestMethod", testNGMethod);
+        invoked.put("getTestResult", result);
+        invoked.put("isTestMethod", true);
+        invoked.put("isConfigurationMethod", false);
+        invoked.put("getDate", start);
+        return stub(IInvokedMethod.class, invoked);
+    }
+
+    /**
+     * A suite whose run invoked {@code cases} test methods, alternating between annotated and plain ones.
+     */
+    static ISuite suite(String name, int cases, int outputLines, int outputLineLength) {
+        List<IInvokedMethod> methods = new ArrayList<>(cases);
+        for (int i = 0; i < cases; i++) {
+            methods.add(invokedMethod(i % 2 == 0 ? annotatedMethod() : plainMethod(), outputLines, outputLineLength));
+        }
+        Map<String, Object> suite = new HashMap<>();
+        suite.put("getName", name);
+        suite.put("getAllInvokedMethods", Collections.unmodifiableList(methods));
+        return stub(ISuite.class, suite);
+    }
+
+    static Method annotatedMethod() {
+        return sampleMethod("annotated");
+    }
+
+    static Method plainMethod() {
+        return sampleMethod("plain");
+    }
+
+    static String line(int length) {
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append((char) ('a' + i % 26));
+        }
+        return builder.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> type, Map<String, Object> answers) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return type.getSimpleName() + answers;
+                default:
+                    Object answer = answers.get(method.getName());
+                    return answer == null ? defaultValue(method.getReturnType()) : answer;
+            }
+        });
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        return type.isPrimitive() && type != void.class ? Array.get(Array.newInstance(type, 1), 0) : null;
+    }
+
+    private static Method sampleMethod(String name) {
+        try {
+            return SampleTest.class.getMethod(name);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Bug("BUG-1")
+    @TestCase(value = "class description", expected = "class expected results")
+    public static class SampleTest {
+        @TestCase(value = "case description", expected = "expected results")
+        public void annotated() {
+        }
+
+        public void plain() {
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter;
+
+import com.github.yongchristophertang.reporter.standin.StandInStorage;
+import com.typesafe.config.ConfigFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.testng.ISuite;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end {@link ReporterService#generateReport} against an in-process {@link StandInStorage}, reported per test
+ * case. The transport, batching and compression modes are parameters so that they can be compared with each other.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configurationFile=log4j2-benchmark.xml")
+@OperationsPerInvocation(GenerateReportBenchmark.CASES)
+@State(Scope.Benchmark)
+public class GenerateReportBenchmark {
+    static final int CASES = 1000;
+
+    @Param({"pooled", "simple"})
+    private String transport;
+
+    @Param({"false", "true"})
+    private String batch;
+
+    @Param({"none", "gzip"})
+    private String compression;
+
+    @Param({"5"})
+    private int outputLines;
+
+    private StandInStorage server;
+    private List<ISuite> suites;
+    private ReporterService reporter;
+
+    @Setup
+    public void setUp() throws IOException {
+        server = new StandInStorage.Builder().recording(false).start();
+        suites = Collections.singletonList(Fixtures.suite("benchmark", CASES, outputLines, 80));
+        System.setProperty(AbstractReporter.STORAGE_HOST, "127.0.0.1");
+        System.setProperty(AbstractReporter.STORAGE_PORT, String.valueOf(server.getPort()));
+        System.setProperty(AbstractReporter.STORAGE_PATH, "/api");
+        System.setProperty(AbstractReporter.STORAGE_TRANSPORT + ".type", transport);
+        System.setProperty(AbstractReporter.STORAGE_BATCH_ENABLED, batch);
+        System.setProperty(AbstractReporter.STORAGE_COMPRESSION_TYPE, compression);
+        ConfigFactory.invalidateCaches();
+    }
+
+    /**
+     * Every invocation gets its own reporter, so that connections and spool start afresh.
+     */
+    @Setup(Level.Invocation)
+    public void createReporter() {
+        reporter = new ReporterService();
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeReporter() {
+        reporter.close();
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.close();
+    }
+
+    @Benchmark
+    public void generateReport() {
+        reporter.generateReport(Collections.emptyList(), suites, null);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter;
+
+import com.github.yongchristophertang.reporter.testcase.TestCaseResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.testng.IInvokedMethod;
+import org.testng.ITestNGMethod;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning an invoked test method into a {@link TestCaseResult}, which is paid once per test case.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configurationFile=log4j2-benchmark.xml")
+@State(Scope.Benchmark)
+public class ResultBuildingBenchmark {
+    private static final List<String> OUTPUTS = Arrays.asList("first line", "second line", "third line");
+
+    private ReporterService reporter;
+    private IInvokedMethod annotatedCase;
+    private IInvokedMethod plainCase;
+    private ITestNGMethod annotatedMethod;
+    private ITestNGMethod plainMethod;
+
+    @Setup
+    public void setUp() {
+        reporter = new ReporterService();
+        annotatedCase = Fixtures.invokedMethod(Fixtures.annotatedMethod(), 3, 80);
+        plainCase = Fixtures.invokedMethod(Fixtures.plainMethod(), 3, 80);
+        annotatedMethod = annotatedCase.getTestMethod();
+        plainMethod = plainCase.getTestMethod();
+    }
+
+    @TearDown
+    public void tearDown() {
+        reporter.close();
+    }
+
+    @Benchmark
+    public TestCaseResult builder() {
+        return new TestCaseResult.TestCaseResultBuilder("testMethod", 42, 1, OUTPUTS)
+                .className("com.example.SampleTest").testName("test").suiteName("suite").configuration(false)
+                .caseDescription("case description").expectedResult("expected results").bug("BUG-1")
+                .date(1449000000000L).createTestCaseResult();
+    }
+
+    @Benchmark
+    public void casePostProcessorAnnotated(Blackhole blackhole) {
+        consume(reporter.getCasePostProcessor(annotatedMethod), blackhole);
+    }
+
+    @Benchmark
+    public void casePostProcessorPlain(Blackhole blackhole) {
+        consume(reporter.getCasePostProcessor(plainMethod), blackhole);
+    }
+
+    @Benchmark
+    public TestCaseResult createResultAnnotated() {
+        return reporter.createResult("suite", annotatedCase, 0);
+    }
+
+    @Benchmark
+    public TestCaseResult createResultPlain() {
+        return reporter.createResult("suite", plainCase, 0);
+    }
+
+    private static void consume(ReporterService.CasePostProcessor processor, Blackhole blackhole) {
+        blackhole.consume(processor.getCaseDescription());
+        blackhole.consume(processor.getExpectedResult());
+        blackhole.consume(processor.getBugInfo());
+    }
+}
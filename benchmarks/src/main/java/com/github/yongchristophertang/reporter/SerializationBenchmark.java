@@ -0,0 +1,81 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.yongchristophertang.reporter.testcase.TestCaseResult;
+import com.github.yongchristophertang.reporter.upload.Encoding;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding of a {@link TestCaseResult} as uploaded, from results without outputs to ones with a large log.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configurationFile=log4j2-benchmark.xml")
+@State(Scope.Benchmark)
+public class SerializationBenchmark {
+    @Param({"0", "10", "1000"})
+    private int outputLines;
+
+    @Param({"120"})
+    private int outputLineLength;
+
+    @Param({"json", "smile", "cbor"})
+    private String encoding;
+
+    private ObjectMapper mapper;
+    private TestCaseResult result;
+
+    @Setup
+    public void setUp() {
+        mapper = Encoding.of(encoding).createMapper();
+        List<String> outputs = new ArrayList<>(outputLines);
+        for (int i = 0; i < outputLines; i++) {
+            outputs.add(Fixtures.line(outputLineLength));
+        }
+        result = new TestCaseResult.TestCaseResultBuilder("testMethod", 42, 1, outputs)
+                .className("com.example.SampleTest").testName("test").suiteName("suite").configuration(false)
+                .caseDescription("case description").expectedResult("expected results").bug("BUG-1")
+                .date(1449000000000L).createTestCaseResult();
+    }
+
+    @Benchmark
+    public byte[] writeValueAsBytes() throws JsonProcessingException {
+        return mapper.writeValueAsBytes(result);
+    }
+}
@@ -16,10 +16,30 @@
 
 package com.github.yongchristophertang.reporter;
 
+import com.github.yongchristophertang.reporter.delta.ResultIndex;
+import com.github.yongchristophertang.reporter.routing.Endpoint;
+import com.github.yongchristophertang.reporter.routing.EndpointRouter;
+import com.github.yongchristophertang.reporter.spool.ResultSpool;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
+import javaslang.control.Try;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.AsyncRestTemplate;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * Abstract reporter used to be inherited by concrete reporter, which provides basic functionality or configurations.
@@ -28,25 +48,241 @@ import java.util.Objects;
  * @since 0.1
  */
 abstract class AbstractReporter {
+    private static final Logger logger = LogManager.getLogger();
     static final String STORAGE_PROTOCOL = "report.storage.protocol";
     static final String STORAGE_HOST = "report.storage.host";
     static final String STORAGE_PORT = "report.storage.port";
     static final String STORAGE_PATH = "report.storage.path";
+    static final String STORAGE_ENCODING = "report.storage.encoding";
+    static final String STORAGE_RUN_ID = "report.storage.run-id";
+    static final String STORAGE_IDEMPOTENCY_HEADER = "report.storage.idempotency-header";
+    static final String STORAGE_ENDPOINTS = "report.storage.endpoints";
+    static final String STORAGE_ROUTING_STRATEGY = "report.storage.routing.strategy";
+    static final String STORAGE_ROUTING_EJECT_AFTER = "report.storage.routing.eject-after";
+    static final String STORAGE_ROUTING_EJECT_DURATION = "report.storage.routing.eject-duration";
+    static final String STORAGE_BATCH_ENABLED = "report.storage.batch.enabled";
+    static final String STORAGE_BATCH_FORMAT = "report.storage.batch.format";
+    static final String STORAGE_BATCH_PATH = "report.storage.batch.path";
+    static final String STORAGE_BATCH_MAX_RECORDS = "report.storage.batch.max-records";
+    static final String STORAGE_BATCH_MAX_BYTES = "report.storage.batch.max-bytes";
+    static final String STORAGE_BATCH_MAX_LINGER = "report.storage.batch.max-linger";
+    static final String STORAGE_OUTPUTS_MAX_LINES = "report.storage.outputs.max-lines";
+    static final String STORAGE_OUTPUTS_MAX_BYTES = "report.storage.outputs.max-bytes";
+    static final String STORAGE_OUTPUTS_EXTERNAL_ENABLED = "report.storage.outputs.external.enabled";
+    static final String STORAGE_OUTPUTS_EXTERNAL_MIN_SIZE = "report.storage.outputs.external.min-size";
+    static final String STORAGE_OUTPUTS_EXTERNAL_CHUNK_SIZE = "report.storage.outputs.external.chunk-size";
+    static final String STORAGE_OUTPUTS_EXTERNAL_PATH = "report.storage.outputs.external.path";
+    static final String STORAGE_OUTPUTS_EXTERNAL_PREVIEW_LINES = "report.storage.outputs.external.preview-lines";
+    static final String STORAGE_OUTPUTS_EXTERNAL_PREVIEW_BYTES = "report.storage.outputs.external.preview-bytes";
+    static final String STORAGE_ATTACHMENTS_ENABLED = "report.storage.attachments.enabled";
+    static final String STORAGE_ATTACHMENTS_PATH = "report.storage.attachments.path";
+    static final String STORAGE_ATTACHMENTS_CHUNK_SIZE = "report.storage.attachments.chunk-size";
+    static final String STORAGE_POLICY = "report.storage.policy";
+    static final String STORAGE_EXTRACTION_PARALLELISM = "report.storage.extraction.parallelism";
+    static final String STORAGE_EXTRACTION_ORDERED = "report.storage.extraction.ordered";
+    static final String STORAGE_DELTA_ENABLED = "report.storage.delta.enabled";
+    static final String STORAGE_DELTA_INDEX_FILE = "report.storage.delta.index-file";
+    static final String STORAGE_DELTA_PATH = "report.storage.delta.path";
+    static final String STORAGE_STREAMING_QUEUE_SIZE = "report.storage.streaming.queue-size";
+    static final String STORAGE_STREAMING_WORKERS = "report.storage.streaming.workers";
+    static final String STORAGE_SPOOL_ENABLED = "report.storage.spool.enabled";
+    static final String STORAGE_SPOOL_DIRECTORY = "report.storage.spool.directory";
+    static final String STORAGE_SPOOL_SEGMENT_SIZE = "report.storage.spool.segment-size";
+    static final String STORAGE_SPOOL_REPLAY_ON_START = "report.storage.spool.replay-on-start";
+    static final String STORAGE_AGGREGATION_ENABLED = "report.storage.aggregation.enabled";
+    static final String STORAGE_AGGREGATION_DIRECTORY = "report.storage.aggregation.directory";
+    static final String STORAGE_AGGREGATION_SEGMENT_SIZE = "report.storage.aggregation.segment-size";
+    static final String STORAGE_AGGREGATION_POLL_INTERVAL = "report.storage.aggregation.poll-interval";
+    static final String STORAGE_AGGREGATION_REMEMBERED_FORKS = "report.storage.aggregation.remembered-forks";
+    static final String STORAGE_METRICS_JMX = "report.storage.metrics.jmx";
+    static final String STORAGE_METRICS_SUMMARY_FILE = "report.storage.metrics.summary-file";
+    static final String STORAGE_SHUTDOWN_DEADLINE = "report.storage.shutdown.deadline";
+    static final String STORAGE_SHUTDOWN_PROGRESS_INTERVAL = "report.storage.shutdown.progress-interval";
+    static final String STORAGE_SHUTDOWN_HOOK = "report.storage.shutdown.hook";
+    static final String STORAGE_SHUTDOWN_HOOK_DEADLINE = "report.storage.shutdown.hook-deadline";
+    static final String STORAGE_EXECUTOR_TYPE = "report.storage.executor.type";
+    static final String STORAGE_EXECUTOR_THREADS = "report.storage.executor.threads";
+    static final String STORAGE_EXECUTOR_QUEUE_SIZE = "report.storage.executor.queue-size";
+    static final String STORAGE_EXECUTOR_BACKPRESSURE = "report.storage.executor.backpressure";
+    static final String STORAGE_LIMITER = "report.storage.limiter";
+    static final String STORAGE_TRANSPORT = "report.storage.transport";
+    static final String STORAGE_COMPRESSION_TYPE = "report.storage.transport.compression.type";
+    static final String STORAGE_COMPRESSION_MIN_SIZE = "report.storage.transport.compression.min-size";
+    static final String STORAGE_RETRY = "report.storage.retry";
+    static final String STORAGE_RETRY_BREAKER_THRESHOLD = "report.storage.retry.circuit-breaker.failure-threshold";
+    static final String STORAGE_RETRY_HEDGE = "report.storage.retry.hedge";
+    static final String STORAGE_RETRY_BREAKER_OPEN_DURATION = "report.storage.retry.circuit-breaker.open-duration";
     private final Config config;
+    private final EndpointRouter router;
+    private final String path;
+    private final String bulkPath;
+    private final String outputsPath;
+    private final String deltaPath;
+    private final String attachmentsPath;
 
     AbstractReporter() {
         config = ConfigFactory.load();
         config.checkValid(ConfigFactory.defaultReference(), "report.storage");
+        router = new EndpointRouter(getEndpoints(),
+                EndpointRouter.Strategy.of(config.getString(STORAGE_ROUTING_STRATEGY)),
+                config.getInt(STORAGE_ROUTING_EJECT_AFTER),
+                config.getDuration(STORAGE_ROUTING_EJECT_DURATION, TimeUnit.MILLISECONDS));
+        path = normalize(config.getString(STORAGE_PATH));
+        bulkPath = normalize(config.getString(STORAGE_BATCH_PATH));
+        String outputs = normalize(config.getString(STORAGE_OUTPUTS_EXTERNAL_PATH));
+        outputsPath = outputs.endsWith("/") ? outputs : outputs + "/";
+        deltaPath = normalize(config.getString(STORAGE_DELTA_PATH));
+        attachmentsPath = normalize(config.getString(STORAGE_ATTACHMENTS_PATH));
     }
 
+    protected final Config getStorageConfig() {
+        return config;
+    }
+
+    /**
+     * Open the configured local spool, or return null if spooling is disabled or the directory is not usable.
+     */
+    protected final ResultSpool openSpool() {
+        if (!config.getBoolean(STORAGE_SPOOL_ENABLED)) {
+            return null;
+        }
+        return Try.of(() -> new ResultSpool(Paths.get(config.getString(STORAGE_SPOOL_DIRECTORY)),
+                config.getBytes(STORAGE_SPOOL_SEGMENT_SIZE)))
+                .onFailure(t -> logger.error("Failed to open local spool, undelivered results will be lost", t))
+                .orElse(null);
+    }
+
+    /**
+     * Open the spool shared by the forks of a run and their {@link ResultCollector}, or return null if aggregation is
+     * disabled or the directory is not usable.
+     */
+    protected final ResultSpool openHandoff() {
+        if (!config.getBoolean(STORAGE_AGGREGATION_ENABLED)) {
+            return null;
+        }
+        return Try.of(() -> new ResultSpool(Paths.get(config.getString(STORAGE_AGGREGATION_DIRECTORY)),
+                config.getBytes(STORAGE_AGGREGATION_SEGMENT_SIZE)))
+                .onFailure(t -> logger.error("Failed to open aggregation directory, results are uploaded directly", t))
+                .orElse(null);
+    }
+
+    /**
+     * Read the local index of the last fully uploaded run, or return null if delta mode is disabled.
+     */
+    protected final ResultIndex openIndex() {
+        if (!config.getBoolean(STORAGE_DELTA_ENABLED)) {
+            return null;
+        }
+        return ResultIndex.load(Paths.get(config.getString(STORAGE_DELTA_INDEX_FILE)));
+    }
+
+    /**
+     * Url of the endpoint which accepts one result per request, on the first storage node.
+     */
     protected final String getUrl() {
-        StringBuilder sb = new StringBuilder();
-        String host = Objects.requireNonNull(config.getString(STORAGE_HOST), "Host must not be null");
+        return router.getEndpoints().get(0).getUrl(path);
+    }
+
+    /**
+     * Path of the endpoint which accepts one result per request.
+     */
+    protected final String getPath() {
+        return path;
+    }
+
+    /**
+     * Path of the bulk endpoint which accepts a batch of results in one request.
+     */
+    protected final String getBulkPath() {
+        return bulkPath;
+    }
+
+    /**
+     * Path of the endpoint which accepts chunks of outputs uploaded separately from their results.
+     */
+    protected final String getOutputsPath(String hash) {
+        return outputsPath + hash;
+    }
+
+    /**
+     * Path of the endpoint which accepts the list of results unchanged since the previous run.
+     */
+    protected final String getDeltaPath() {
+        return deltaPath;
+    }
+
+    /**
+     * Path of the endpoint which accepts chunks of files attached to results.
+     */
+    protected final String getAttachmentsPath() {
+        return attachmentsPath;
+    }
+
+    /**
+     * Post to the storage node selected for the given key, keeping track of the node's load and health.
+     *
+     * @param key  routing key of the posted data, or null if it may go to any node
+     * @param path path of the endpoint on the node
+     * @param body request body or {@link org.springframework.http.HttpEntity}
+     */
+    protected final ResponseEntity<String> post(RestTemplate restTemplate, String key, String path, Object body) {
+        Endpoint endpoint = router.acquire(key);
+        boolean healthy = false;
+        try {
+            ResponseEntity<String> response = restTemplate.postForEntity(endpoint.getUrl(path), body, String.class);
+            healthy = !response.getStatusCode().is5xxServerError();
+            return response;
+        } catch (HttpClientErrorException e) {
+            healthy = true;
+            throw e;
+        } finally {
+            router.release(endpoint, healthy);
+        }
+    }
+
+    /**
+     * Post to the storage node selected for the given key without blocking, keeping track of the node's load and
+     * health once it answers. I/O failures are reported as {@link ResourceAccessException}s, as blocking posts do.
+     *
+     * @param key  routing key of the posted data, or null if it may go to any node
+     * @param path path of the endpoint on the node
+     * @param body request body
+     */
+    protected final CompletableFuture<ResponseEntity<String>> postAsync(AsyncRestTemplate restTemplate, String key,
+                                                                      String path, HttpEntity<?> body) {
+        Endpoint endpoint = router.acquire(key);
+        String url = endpoint.getUrl(path);
+        CompletableFuture<ResponseEntity<String>> response = new CompletableFuture<>();
+        try {
+            restTemplate.postForEntity(url, body, String.class).addCallback(response::complete,
+                    t -> response.completeExceptionally(t instanceof IOException ?
+                            new ResourceAccessException("I/O error on POST request for " + url + ": " +
+                                    t.getMessage(), (IOException) t) : t));
+        } catch (RuntimeException e) {
+            response.completeExceptionally(e);
+        }
+        return response.whenComplete((r, t) -> router.release(endpoint,
+                r != null ? !r.getStatusCode().is5xxServerError() : t instanceof HttpClientErrorException));
+    }
+
+    /**
+     * Base urls of the storage nodes, either listed as endpoints or given by host and port.
+     */
+    private List<Endpoint> getEndpoints() {
         String protocol = config.getString(STORAGE_PROTOCOL);
-        int port = config.getInt(STORAGE_PORT);
-        String path = config.getString(STORAGE_PATH);
-        return sb.append(protocol == null ? "http://" : protocol + "://").append(host)
-                .append(host.matches("^(?:[0-9]{1,3}\\.){3}[0-9]{1,3}$") ? ":" + port : "")
-                .append(path.startsWith("/") ? path : "/" + path).toString();
+        String scheme = protocol == null ? "http://" : protocol + "://";
+        List<String> endpoints = config.getStringList(STORAGE_ENDPOINTS);
+        if (endpoints.isEmpty()) {
+            String host = Objects.requireNonNull(config.getString(STORAGE_HOST), "Host must not be null");
+            int port = config.getInt(STORAGE_PORT);
+            return Collections.singletonList(new Endpoint(scheme + host +
+                    (host.matches("^(?:[0-9]{1,3}\\.){3}[0-9]{1,3}$") ? ":" + port : "")));
+        }
+        return endpoints.stream().map(e -> new Endpoint(e.contains("://") ? e : scheme + e))
+                .collect(Collectors.toList());
+    }
+
+    private static String normalize(String path) {
+        return path.startsWith("/") ? path : "/" + path;
     }
 }
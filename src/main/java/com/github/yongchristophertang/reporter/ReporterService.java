@@ -16,83 +16,624 @@
 
 package com.github.yongchristophertang.reporter;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.yongchristophertang.reporter.attachment.Attachment;
+import com.github.yongchristophertang.reporter.attachment.Attachments;
+import com.github.yongchristophertang.reporter.attachment.FileRegion;
+import com.github.yongchristophertang.reporter.attachment.FileRegionHttpMessageConverter;
 import com.github.yongchristophertang.reporter.annotation.Bug;
+import com.github.yongchristophertang.reporter.annotation.CaseAnnotations;
 import com.github.yongchristophertang.reporter.annotation.TestCase;
+import com.github.yongchristophertang.reporter.delta.ResultIndex;
+import com.github.yongchristophertang.reporter.metrics.SentBytesAsyncRequestFactory;
+import com.github.yongchristophertang.reporter.metrics.SentBytesRequestFactory;
+import com.github.yongchristophertang.reporter.metrics.UploadMetrics;
+import com.github.yongchristophertang.reporter.output.OutputChunk;
+import com.github.yongchristophertang.reporter.output.OutputProcessor;
+import com.github.yongchristophertang.reporter.spool.ResultSpool;
+import com.github.yongchristophertang.reporter.testcase.StringDictionary;
 import com.github.yongchristophertang.reporter.testcase.TestCaseResult;
+import com.github.yongchristophertang.reporter.transport.CompressingAsyncRequestFactory;
+import com.github.yongchristophertang.reporter.transport.Compression;
+import com.github.yongchristophertang.reporter.transport.CompressingRequestFactory;
+import com.github.yongchristophertang.reporter.transport.UploadTransport;
+import com.github.yongchristophertang.reporter.upload.*;
 import com.google.common.annotations.VisibleForTesting;
-import javaslang.Tuple2;
+import javaslang.Tuple3;
 import javaslang.control.Try;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.AsyncClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.converter.StringHttpMessageConverter;
+import org.springframework.web.client.AsyncRestTemplate;
 import org.springframework.web.client.RestTemplate;
 import org.testng.*;
 import org.testng.xml.XmlSuite;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Method;
-import java.util.ArrayList;
-import java.util.List;
+import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
- * Submit generated test results and associated contexts to remote storage.
+ * Submit generated test results and associated contexts to remote storage. Uploads are drained at the end of each
+ * report, and once more by a shutdown hook should the JVM exit with uploads still pending, e.g. in an aborted run.
  *
  * @author Yong Tang
  * @since 0.1
  */
-public class ReporterService extends AbstractReporter implements IReporter {
+public class ReporterService extends AbstractReporter implements IReporter, Closeable {
+    static final String RUN_ID_HEADER = "X-Run-Id";
     private static final Logger logger = LogManager.getLogger();
-    private final RestTemplate restTemplate = new RestTemplate();
-    private final ExecutorService service = Executors.newCachedThreadPool();
+    private final RetryPolicy retryPolicy = RetryPolicy.of(getStorageConfig().getConfig(STORAGE_RETRY));
+    private final UploadTransport transport = UploadTransport.of(getStorageConfig().getConfig(STORAGE_TRANSPORT),
+            retryPolicy.getAttemptTimeoutMillis());
+    private final UploadMetrics metrics = new UploadMetrics();
+    private final ResultIndex index = openIndex();
+    private final String runId = createRunId();
+    private final RestTemplate restTemplate = createRestTemplate();
+    private final AsyncRestTemplate asyncTemplate = createAsyncTemplate();
+    private final RestTemplate streamingTemplate = createStreamingTemplate();
+    private final boolean attachmentsEnabled = getStorageConfig().getBoolean(STORAGE_ATTACHMENTS_ENABLED);
+    private final long attachmentChunkSize = getStorageConfig().getBytes(STORAGE_ATTACHMENTS_CHUNK_SIZE);
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Encoding encoding = Encoding.of(getStorageConfig().getString(STORAGE_ENCODING));
+    private final ObjectMapper encodingMapper = encoding.createMapper();
+    private final StringDictionary dictionary = new StringDictionary();
+    private final UploadPolicy policy = UploadPolicy.of(getStorageConfig().getConfig(STORAGE_POLICY));
+    private final String idempotencyHeader = getStorageConfig().getString(STORAGE_IDEMPOTENCY_HEADER);
+    private volatile String version;
+    private final ExecutorService service = UploadExecutors.create(
+            UploadExecutors.Type.of(getStorageConfig().getString(STORAGE_EXECUTOR_TYPE)),
+            getStorageConfig().getInt(STORAGE_EXECUTOR_THREADS), getStorageConfig().getInt(STORAGE_EXECUTOR_QUEUE_SIZE),
+            UploadExecutors.Backpressure.of(getStorageConfig().getString(STORAGE_EXECUTOR_BACKPRESSURE)));
+    private final RetryingUploader uploader = new RetryingUploader(service, retryPolicy,
+            new CircuitBreaker(getStorageConfig().getInt(STORAGE_RETRY_BREAKER_THRESHOLD),
+                    getStorageConfig().getDuration(STORAGE_RETRY_BREAKER_OPEN_DURATION, TimeUnit.MILLISECONDS)),
+            metrics, HedgePolicy.of(getStorageConfig().getConfig(STORAGE_RETRY_HEDGE)),
+            ConcurrencyLimiter.of(getStorageConfig().getConfig(STORAGE_LIMITER), getMaxInFlight()));
+    private final ResultSpool spool = openSpool();
+    private final UploadLifecycle lifecycle = new UploadLifecycle(service, uploader, this::spool,
+            getStorageConfig().getDuration(STORAGE_SHUTDOWN_PROGRESS_INTERVAL, TimeUnit.MILLISECONDS));
+    private final OutputProcessor outputProcessor = new OutputProcessor(
+            getStorageConfig().getInt(STORAGE_OUTPUTS_MAX_LINES),
+            getStorageConfig().getBytes(STORAGE_OUTPUTS_MAX_BYTES),
+            getStorageConfig().getBoolean(STORAGE_OUTPUTS_EXTERNAL_ENABLED) ?
+                    getStorageConfig().getBytes(STORAGE_OUTPUTS_EXTERNAL_MIN_SIZE) : 0,
+            getStorageConfig().getBytes(STORAGE_OUTPUTS_EXTERNAL_CHUNK_SIZE).intValue(),
+            getStorageConfig().getInt(STORAGE_OUTPUTS_EXTERNAL_PREVIEW_LINES),
+            getStorageConfig().getBytes(STORAGE_OUTPUTS_EXTERNAL_PREVIEW_BYTES),
+            chunk -> upload(new UploadOutputChunk(chunk), Collections.emptyList()));
+    private final boolean extractionOrdered = getStorageConfig().getBoolean(STORAGE_EXTRACTION_ORDERED);
+    private final ForkJoinPool extractionPool = createExtractionPool();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final Thread shutdownHook = new Thread(this::onShutdown, "report-storage-shutdown");
+    private final ResultSpool handoff;
+    private final String forkId = UUID.randomUUID().toString();
+    private final AtomicLong handedOff = new AtomicLong();
+    private long failedReported;
+
+    public ReporterService() {
+        this(true);
+    }
+
+    /**
+     * @param handOff whether results are handed to a {@link ResultCollector} if aggregation is enabled, rather than
+     *                uploaded
+     */
+    ReporterService(boolean handOff) {
+        handoff = handOff ? openHandoff() : null;
+        if (getStorageConfig().getBoolean(STORAGE_METRICS_JMX)) {
+            metrics.register();
+        }
+        if (spool != null && getStorageConfig().getBoolean(STORAGE_SPOOL_REPLAY_ON_START)) {
+            Thread replay = new Thread(new SpoolReplayer(restTemplate, spool), "report-storage-spool-replay");
+            replay.setDaemon(true);
+            replay.start();
+        }
+        if (getStorageConfig().getBoolean(STORAGE_SHUTDOWN_HOOK)) {
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        }
+    }
 
     /**
-     * Submit all results asynchronously to remote storage with location at {@link #getUrl()}.
-     * If a set of result fails to transmit, another attempt will be activated. However only one more chance will be
-     * tried.
+     * Submit all results asynchronously to remote storage at {@link #getPath()}, or grouped in batches to
+     * {@link #getBulkPath()} if batch mode is enabled. Results are built in parallel if extraction is configured so,
+     * and each is submitted as soon as it is built. In delta mode, results unchanged since the previous run are
+     * only listed by name to {@link #getDeltaPath()}.
+     * If a result or a batch fails to transmit, it is attempted again as the configured {@link RetryPolicy} allows,
+     * after which the result is kept in the local spool if it is enabled. Results still not uploaded when the
+     * shutdown deadline has passed are kept in the spool as well. The service stays usable for further reports
+     * until it is closed. If aggregation is enabled, results are handed to the {@link ResultCollector} instead.
      */
     public void generateReport(List<XmlSuite> xmlSuites, List<ISuite> suites, String outputDirectory) {
-        List<Tuple2<TestCaseResult, Future<ResponseEntity<String>>>> futureTuples = new ArrayList<>();
+        resetOutputs();
+        if (handoff != null) {
+            extractResults(suites, this::handOff);
+            finishHandoff();
+            return;
+        }
+        ResultBatcher batcher = getStorageConfig().getBoolean(STORAGE_BATCH_ENABLED) ?
+                createBatcher(b -> upload(new UploadBatch(b), b.getResults())) : null;
+
+        List<TestCaseResult> unchanged = Collections.synchronizedList(new ArrayList<>());
+        extractResults(suites, result -> {
+            if (isUnchanged(result)) {
+                unchanged.add(result);
+            } else if (batcher != null) {
+                Try.run(() -> batcher.add(result))
+                        .onFailure(t -> logger.error("Failed to encode test case result {}", result, t));
+            } else {
+                upload(new UploadResults(result), Collections.singletonList(result));
+            }
+        });
+
+        long flushStart = System.currentTimeMillis();
+        if (batcher != null) {
+            batcher.close();
+        }
+        uploadUnchanged(unchanged);
+        updateIndex(awaitUploads(flushStart, outputDirectory) == 0);
+    }
+
+    /**
+     * Start a new report, in which outputs uploaded separately during the previous one are uploaded again.
+     */
+    void resetOutputs() {
+        outputProcessor.reset();
+    }
 
+    /**
+     * Append a result to the spool shared with the {@link ResultCollector}, tagged with this fork and a sequence
+     * number by which the collector drops duplicates.
+     *
+     * @return whether aggregation is enabled, otherwise the result is left for upload
+     */
+    boolean handOff(TestCaseResult result) {
+        if (handoff == null) {
+            return false;
+        }
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("fork", forkId);
+        record.put("seq", handedOff.incrementAndGet());
+        record.put("key", result.getIdempotencyKey());
+        record.put("result", result);
+        if (!result.getAttachments().isEmpty()) {
+            record.put("attachments", result.getAttachments().stream().map(a -> {
+                Map<String, Object> attachment = new LinkedHashMap<>();
+                attachment.put("name", a.getName());
+                attachment.put("path", a.getPath().toAbsolutePath().toString());
+                attachment.put("contentType", a.getContentType());
+                return attachment;
+            }).collect(Collectors.toList()));
+        }
+        Try.run(() -> handoff.append(mapper.writeValueAsBytes(record)))
+                .onFailure(t -> logger.error("Failed to hand over test case result {}", result, t));
+        return true;
+    }
+
+    boolean isHandingOff() {
+        return handoff != null;
+    }
+
+    /**
+     * Release the segment written by this fork, so that the collector picks it up.
+     */
+    void finishHandoff() {
+        Try.run(handoff::close).onFailure(t -> logger.error("Failed to close aggregation spool", t));
+        logger.info("{} test case results have been handed to the result collector", handedOff.get());
+    }
+
+    /**
+     * Whether a result is the same as in the previous run in delta mode, so that it is only listed as unchanged.
+     */
+    boolean isUnchanged(TestCaseResult result) {
+        return index != null && index.add(result);
+    }
+
+    /**
+     * List results unchanged since the previous run in chunks of the batch size, referring to that run.
+     */
+    void uploadUnchanged(List<TestCaseResult> unchanged) {
+        if (unchanged.isEmpty()) {
+            return;
+        }
+        logger.info("{} test case results are unchanged since run {}", unchanged.size(), index.getPreviousRunId());
+        int chunkSize = getStorageConfig().getInt(STORAGE_BATCH_MAX_RECORDS);
+        for (int i = 0; i < unchanged.size(); i += chunkSize) {
+            List<TestCaseResult> chunk = new ArrayList<>(unchanged.subList(i, Math.min(unchanged.size(),
+                    i + chunkSize)));
+            upload(new UploadUnchanged(chunk), chunk);
+        }
+    }
+
+    /**
+     * Keep the results of a fully uploaded run as the base of the next one. After failures the index of the
+     * previous run is kept instead, as storage may lack some of the results of this one.
+     *
+     * @param uploaded whether all results of the run have been uploaded
+     */
+    void updateIndex(boolean uploaded) {
+        if (index == null) {
+            return;
+        }
+        if (!uploaded) {
+            index.reset();
+            return;
+        }
+        Try.run(() -> index.save(Paths.get(getStorageConfig().getString(STORAGE_DELTA_INDEX_FILE)), runId))
+                .onFailure(t -> {
+                    logger.warn("Failed to save result index, the next run uploads in full", t);
+                    index.reset();
+                });
+    }
+
+    /**
+     * Wait for pending uploads up to the shutdown deadline, then report how the uploads of this report went.
+     *
+     * @param flushStart time at which the last result has been submitted
+     * @return number of results which failed to upload
+     */
+    long awaitUploads(long flushStart, String outputDirectory) {
+        lifecycle.drain(getStorageConfig().getDuration(STORAGE_SHUTDOWN_DEADLINE, TimeUnit.MILLISECONDS));
+        long failed;
+        synchronized (lifecycle) {
+            failed = lifecycle.getFailedResults() + lifecycle.getAbandonedResults() - failedReported;
+            failedReported += failed;
+        }
+        if (failed > 0) {
+            logger.error("There are {} cases failed to upload to remote storage.", failed);
+        } else {
+            logger.info("All test case results have been successfully transmitted to remote storage");
+        }
+        logTransport();
+        reportMetrics(System.currentTimeMillis() - flushStart, outputDirectory);
+        return failed;
+    }
+
+    /**
+     * Stop uploading and release the connections to remote storage. Pending uploads are not waited for.
+     */
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        lifecycle.close();
+        if (spool != null) {
+            Try.run(spool::close).onFailure(t -> logger.warn("Failed to close local spool", t));
+        }
+        if (handoff != null) {
+            Try.run(handoff::close).onFailure(t -> logger.warn("Failed to close aggregation spool", t));
+        }
+        if (extractionPool != null) {
+            extractionPool.shutdown();
+        }
+        Try.run(transport::close).onFailure(t -> logger.warn("Failed to close connections to remote storage", t));
+        metrics.unregister();
+        if (Thread.currentThread() != shutdownHook) {
+            Try.run(() -> Runtime.getRuntime().removeShutdownHook(shutdownHook));
+        }
+    }
+
+    /**
+     * Run by the shutdown hook, drain whatever is still pending before the JVM exits.
+     */
+    void onShutdown() {
+        if (closed.get()) {
+            return;
+        }
+        if (lifecycle.getPendingCount() > 0) {
+            logger.info("Flushing {} pending uploads to remote storage before exit", lifecycle.getPendingCount());
+            lifecycle.drain(getStorageConfig().getDuration(STORAGE_SHUTDOWN_HOOK_DEADLINE, TimeUnit.MILLISECONDS));
+        }
+        close();
+    }
+
+    /**
+     * Template sending requests blocking. Bytes are counted beneath compression, as they are sent.
+     */
+    private RestTemplate createRestTemplate() {
+        Compression compression = Compression.of(getStorageConfig().getString(STORAGE_COMPRESSION_TYPE));
+        ClientHttpRequestFactory factory = new SentBytesRequestFactory(transport.getRequestFactory(), metrics);
+        return new RestTemplate(compression == Compression.NONE ? factory : new CompressingRequestFactory(factory,
+                compression, getStorageConfig().getBytes(STORAGE_COMPRESSION_MIN_SIZE).intValue()));
+    }
+
+    /**
+     * Attempts which can be in flight at once: one per worker, or one per connection if workers are not held while
+     * attempts are in flight.
+     */
+    private int getMaxInFlight() {
+        return asyncTemplate == null ? getStorageConfig().getInt(STORAGE_EXECUTOR_THREADS) :
+                getStorageConfig().getInt(STORAGE_TRANSPORT + ".max-total");
+    }
+
+    /**
+     * Template sending requests without blocking, with the converters, error handling, compression and byte count
+     * of the blocking one, or null if the transport only sends blocking requests.
+     */
+    private AsyncRestTemplate createAsyncTemplate() {
+        if (transport.getAsyncRequestFactory() == null) {
+            return null;
+        }
+        AsyncClientHttpRequestFactory factory = new SentBytesAsyncRequestFactory(transport.getAsyncRequestFactory(),
+                metrics);
+        Compression compression = Compression.of(getStorageConfig().getString(STORAGE_COMPRESSION_TYPE));
+        if (compression != Compression.NONE) {
+            factory = new CompressingAsyncRequestFactory(factory, compression,
+                    getStorageConfig().getBytes(STORAGE_COMPRESSION_MIN_SIZE).intValue());
+        }
+        return new AsyncRestTemplate(factory, restTemplate);
+    }
+
+    /**
+     * Template writing files straight to the connection, uncompressed.
+     */
+    private RestTemplate createStreamingTemplate() {
+        RestTemplate template = new RestTemplate(Arrays.asList(new FileRegionHttpMessageConverter(),
+                new StringHttpMessageConverter()));
+        template.setRequestFactory(new SentBytesRequestFactory(transport.getStreamingRequestFactory(), metrics));
+        return template;
+    }
+
+    /**
+     * The configured run id, or a random one.
+     */
+    private String createRunId() {
+        String configured = getStorageConfig().getString(STORAGE_RUN_ID);
+        return configured.isEmpty() ? UUID.randomUUID().toString() : configured;
+    }
+
+    /**
+     * Report how well the connections to remote storage have been reused.
+     */
+    private void logTransport() {
+        if (transport.getConnectionCount() >= 0) {
+            logger.info("{} requests have been sent to remote storage over {} connections",
+                    transport.getRequestCount(), transport.getConnectionCount());
+        } else {
+            logger.info("{} requests have been sent to remote storage", transport.getRequestCount());
+        }
+    }
+
+    /**
+     * Log the upload metrics of the run and write their summary to the output directory. They are withdrawn from
+     * JMX once the service is closed.
+     *
+     * @param flushMillis time spent waiting for pending uploads at the end of the run
+     */
+    void reportMetrics(long flushMillis, String outputDirectory) {
+        metrics.onFlushed(flushMillis);
+        logger.info("Upload metrics: {}", metrics);
+        String summaryFile = getStorageConfig().getString(STORAGE_METRICS_SUMMARY_FILE);
+        if (outputDirectory != null && !summaryFile.isEmpty()) {
+            Try.run(() -> mapper.writerWithDefaultPrettyPrinter().writeValue(new File(outputDirectory, summaryFile),
+                    metrics.getSummary()))
+                    .onFailure(t -> logger.warn("Failed to write upload metrics to {}", outputDirectory, t));
+        }
+    }
+
+    /**
+     * Build the results of all invoked methods, passing each to the sink as soon as it is built. On the extraction
+     * pool, results are built in parallel and the sink is called concurrently unless extraction is ordered, in
+     * which case results reach the sink one at a time in the order of suites and their invoked methods.
+     */
+    void extractResults(List<ISuite> suites, Consumer<TestCaseResult> sink) {
+        List<Tuple3<String, IInvokedMethod, Integer>> invoked = new ArrayList<>();
+        Map<String, Integer> ordinals = new HashMap<>();
         for (ISuite suite : suites) {
             for (IInvokedMethod testCase : suite.getAllInvokedMethods()) {
-                ITestNGMethod method = testCase.getTestMethod();
-                CasePostProcessor processor = new CasePostProcessor(method);
-                TestCaseResult result = new TestCaseResult.TestCaseResultBuilder(method.getMethodName(),
-                        testCase.getTestResult().getEndMillis() - testCase.getTestResult().getStartMillis(),
-                        testCase.getTestResult().getStatus(), Reporter.getOutput(testCase.getTestResult()))
-                        .className(method.getTestClass().getName()).testName(testCase.getTestResult().getTestName())
-                        .suiteName(suite.getName()).configuration(testCase.isConfigurationMethod())
-                        .caseDescription(processor.getCaseDescription()).expectedResult(processor.getExpectedResult())
-                        .bug(processor.getBugInfo()).date(testCase.getDate()).createTestCaseResult();
-                futureTuples.add(new Tuple2<>(result, service.submit(new UploadResults(result))));
+                invoked.add(new Tuple3<>(suite.getName(), testCase,
+                        ordinals.merge(invocationOf(suite.getName(), testCase), 1, Integer::sum) - 1));
             }
         }
+        if (extractionPool == null || invoked.size() < 2) {
+            invoked.stream().map(i -> createResult(i._1, i._2, i._3)).filter(Objects::nonNull).forEach(sink);
+            return;
+        }
+        Stream<TestCaseResult> results = invoked.parallelStream().map(i -> createResult(i._1, i._2, i._3))
+                .filter(Objects::nonNull);
+        extractionPool.invoke(ForkJoinTask.adapt(() -> {
+            if (extractionOrdered) {
+                results.forEachOrdered(sink);
+            } else {
+                results.forEach(sink);
+            }
+        }));
+    }
 
-        // First round attempt to upload results, and for failed cases attempt once more
-        List<Future<ResponseEntity<String>>> futures = futureTuples.parallelStream()
-                .filter(f -> Try.of(() -> !f._2.get(5, TimeUnit.SECONDS).getStatusCode().is2xxSuccessful())
-                        .onFailure(t -> logger.error("Failed to upload results to remote storage.", t))
-                        .orElse(true)).map(f -> service.submit(new UploadResults(f._1))).collect(Collectors.toList());
+    /**
+     * A parallel stream runs on the pool of the task it is started by, so results are built on a pool of their
+     * own rather than the common pool.
+     */
+    private ForkJoinPool createExtractionPool() {
+        int parallelism = getStorageConfig().getInt(STORAGE_EXTRACTION_PARALLELISM);
+        if (parallelism <= 0) {
+            parallelism = Runtime.getRuntime().availableProcessors();
+        }
+        return parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+    }
 
-        // Check if all attempts succeed, if not, prompt notice of errors
-        long count = futures.parallelStream()
-                .filter(f -> Try.of(() -> !f.get(5, TimeUnit.SECONDS).getStatusCode().is2xxSuccessful()).orElse(true))
-                .count();
-        if (count > 0) {
-            logger.error("There are {} cases failed to upload to remote storage.", count);
+    /**
+     * Build the result of an invoked method together with its annotated case information, in as much detail as the
+     * {@link UploadPolicy} asks for. Outputs and annotations are not even looked up for slim results.
+     *
+     * @param ordinal number of invocations of the same {@link #invocationOf identity} before this one in the run
+     * @return the result, or null if the policy drops it
+     */
+    TestCaseResult createResult(String suiteName, IInvokedMethod testCase, int ordinal) {
+        ITestNGMethod method = testCase.getTestMethod();
+        ITestResult testResult = testCase.getTestResult();
+        UploadPolicy.Detail detail = policy.detailOf(testResult.getStatus(), testCase.isConfigurationMethod());
+        if (detail == UploadPolicy.Detail.DROP) {
+            return null;
+        }
+        String className = dictionary.intern(method.getTestClass().getName());
+        TestCaseResult.TestCaseResultBuilder builder;
+        if (detail == UploadPolicy.Detail.SLIM) {
+            builder = new TestCaseResult.TestCaseResultBuilder(method.getMethodName(),
+                    testResult.getEndMillis() - testResult.getStartMillis(), testResult.getStatus(),
+                    Collections.emptyList()).slim(true);
         } else {
-            logger.info("All test case results have been successfully transmitted to remote storage");
+            CasePostProcessor processor = new CasePostProcessor(method);
+            boolean detailed = detail == UploadPolicy.Detail.FULL ||
+                    policy.isSampled(suiteName, className, method.getMethodName());
+            OutputProcessor.Processed outputs = detailed ?
+                    outputProcessor.process(getOutput(testResult)) : OutputProcessor.Processed.NONE;
+            builder = new TestCaseResult.TestCaseResultBuilder(method.getMethodName(),
+                    testResult.getEndMillis() - testResult.getStartMillis(), testResult.getStatus(),
+                    outputs.getOutputs()).outputsRef(outputs.getRef())
+                    .caseDescription(processor.getCaseDescription()).expectedResult(processor.getExpectedResult())
+                    .bug(processor.getBugInfo()).date(testCase.getDate());
+            if (detailed && attachmentsEnabled) {
+                builder.attachments(Attachments.of(testResult));
+            }
+        }
+        return builder.className(className).testName(dictionary.intern(testResult.getTestName()))
+                .suiteName(dictionary.intern(suiteName)).version(getVersion())
+                .configuration(testCase.isConfigurationMethod())
+                .idempotencyKey(IdempotencyKeys.of(runId, invocationOf(suiteName, testCase), ordinal))
+                .createTestCaseResult();
+    }
+
+    /**
+     * Identity of an invocation in TestNG's terms: its suite, test, class, method and parameters, the latter by their
+     * string form. Only repeated invocations with the same parameters, e.g. by an invocation count, share it, and are
+     * told apart by their order.
+     */
+    static String invocationOf(String suiteName, IInvokedMethod testCase) {
+        ITestResult testResult = testCase.getTestResult();
+        return suiteName + "/" + testResult.getTestName() + "/" + testCase.getTestMethod().getTestClass().getName() +
+                "/" + testCase.getTestMethod().getMethodName() + Arrays.deepToString(testResult.getParameters());
+    }
+
+    /**
+     * Output logged through {@link Reporter} for a result, none for results TestNG has not registered itself, such as
+     * ones built by other tools, which newer TestNG releases cannot look up.
+     */
+    private static List<String> getOutput(ITestResult testResult) {
+        return Try.of(() -> Reporter.getOutput(testResult)).orElse(Collections.emptyList());
+    }
+
+    /**
+     * Headers of an upload, carrying its idempotency key if a header is configured for it, and the id of the run in
+     * delta mode, so that storage can tell which run unchanged results refer to.
+     */
+    private HttpHeaders headers(String idempotencyKey) {
+        HttpHeaders headers = new HttpHeaders();
+        if (!idempotencyHeader.isEmpty() && idempotencyKey != null) {
+            headers.set(idempotencyHeader, idempotencyKey);
+        }
+        if (index != null) {
+            headers.set(RUN_ID_HEADER, runId);
+        }
+        return headers;
+    }
+
+    /**
+     * The version under test is the same for the whole run, it is read once when the first result is built.
+     */
+    private String getVersion() {
+        String current = version;
+        if (current == null) {
+            current = dictionary.intern(System.getProperty("test_version", "0.0"));
+            version = current;
         }
+        return current;
+    }
+
+    ResultBatcher createBatcher(Consumer<ResultBatch> sink) {
+        BatchFormat format = encoding.getBatchFormat(BatchFormat.of(getStorageConfig().getString(
+                STORAGE_BATCH_FORMAT)));
+        int maxRecords = getStorageConfig().getInt(STORAGE_BATCH_MAX_RECORDS);
+        long maxBytes = getStorageConfig().getBytes(STORAGE_BATCH_MAX_BYTES);
+        long linger = getStorageConfig().getDuration(STORAGE_BATCH_MAX_LINGER, TimeUnit.MILLISECONDS);
+        if (format == BatchFormat.ENVELOPE) {
+            return new ResultBatcher(new RunEnvelope(dictionary, getVersion()), maxRecords, maxBytes, linger, sink);
+        }
+        return new ResultBatcher(format, maxRecords, maxBytes, linger, encodingMapper, sink);
+    }
+
+    /**
+     * Keep undeliverable results in the local spool so that they can be replayed later, if spooling is enabled. Each
+     * is kept with its idempotency key, as it may have reached storage after all.
+     *
+     * @return whether all results have been kept
+     */
+    boolean spool(List<TestCaseResult> results) {
+        if (spool == null) {
+            return false;
+        }
+        long count = results.stream().filter(r -> Try.run(() -> spool.append(mapper.writeValueAsBytes(
+                mapper.<ObjectNode>valueToTree(r).put(SpoolReplayer.KEY_FIELD, r.getIdempotencyKey()))))
+                .onFailure(t -> logger.error("Failed to spool test case result {}", r, t)).isSuccess()).count();
+        logger.debug("{} test case results have been kept in local spool for later replay", count);
+        return count == results.size();
+    }
 
-        try {
-            service.shutdown();
-            if (!service.awaitTermination(2, TimeUnit.SECONDS)) {
-                service.shutdownNow();
+    /**
+     * Results of the same suite and class are routed together when consistent hashing is configured.
+     */
+    private static String routingKey(TestCaseResult result) {
+        return result.getSuiteName() + "/" + result.getClassName();
+    }
+
+    /**
+     * Upload with retries, completing with whether the upload eventually succeeded. The results carried by the
+     * upload are kept in the spool if it fails or is abandoned at the shutdown deadline. Over an asynchronous
+     * transport the upload is sent without blocking.
+     */
+    CompletableFuture<Boolean> upload(Upload upload, List<TestCaseResult> results) {
+        CompletableFuture<Boolean> uploaded = lifecycle.submit(asyncTemplate == null || upload.isStreamed() ?
+                upload : (AsyncUpload) upload::send, results);
+        results.stream().filter(r -> !r.getAttachments().isEmpty()).forEach(r -> uploadAttachments(r, uploaded));
+        return uploaded;
+    }
+
+    /**
+     * Upload the files attached to a result in chunks, once the result itself has been uploaded. Files of results
+     * which fail to upload are not uploaded, nor kept in the spool.
+     */
+    private void uploadAttachments(TestCaseResult result, CompletableFuture<Boolean> uploaded) {
+        for (Attachment attachment : result.getAttachments()) {
+            long size = Try.of(() -> Files.size(attachment.getPath()))
+                    .onFailure(t -> logger.warn("Failed to read {} attached to {}", attachment.getPath(),
+                            result.getCaseName(), t))
+                    .orElse(-1L);
+            if (size < 0) {
+                continue;
+            }
+            int count = (int) Math.max(1, (size + attachmentChunkSize - 1) / attachmentChunkSize);
+            for (int index = 0; index < count; index++) {
+                long position = index * attachmentChunkSize;
+                FileRegion region = new FileRegion(attachment.getPath(), position,
+                        Math.min(attachmentChunkSize, size - position));
+                lifecycle.submitAfter(uploaded, new UploadAttachmentChunk(result, attachment, region, index, count));
             }
-        } catch (InterruptedException e) {
-            logger.error("Reporter service has been interrupted while shutting down", e);
         }
+        uploaded.thenAccept(succeeded -> {
+            if (!succeeded) {
+                logger.warn("Files attached to {} are not uploaded, as the result failed to upload",
+                        result.getCaseName());
+            }
+        });
     }
 
     /**
@@ -104,49 +645,305 @@ public class ReporterService extends AbstractReporter implements IReporter {
     }
 
     /**
-     * Internal test case processor for handling with {@link Bug} and {@link TestCase} annotations.
+     * Internal test case processor for handling with {@link Bug} and {@link TestCase} annotations. Annotations on
+     * the method take precedence over those on its test class.
      */
     class CasePostProcessor {
-        private final Method method;
+        private final TestCase testCase;
+        private final Bug bug;
 
         CasePostProcessor(ITestNGMethod method) {
-            this.method = method.getConstructorOrMethod().getMethod();
+            Method m = method.getConstructorOrMethod().getMethod();
+            CaseAnnotations methodAnnotations = CaseAnnotations.of(m);
+            CaseAnnotations classAnnotations = CaseAnnotations.of(method.getRealClass() != null ?
+                    method.getRealClass() : m.getDeclaringClass());
+            this.testCase = methodAnnotations.getTestCase() != null ? methodAnnotations.getTestCase() :
+                    classAnnotations.getTestCase();
+            this.bug = methodAnnotations.getBug() != null ? methodAnnotations.getBug() : classAnnotations.getBug();
         }
 
         String getCaseDescription() {
-            return Try.of(() -> method.getAnnotation(TestCase.class).value()).orElse("");
+            return testCase == null ? "" : testCase.value();
         }
 
         String getExpectedResult() {
-            return Try.of(() -> method.getAnnotation(TestCase.class).expected()).orElse("");
+            return testCase == null ? "" : testCase.expected();
         }
 
         String getBugInfo() {
-            return Try.of(() -> method.getAnnotation(Bug.class).value()).orElse(null);
+            return bug == null ? null : bug.value();
+        }
+    }
+
+    /**
+     * Async callable service for uploading data to remote storage, which is sent either blocking or without
+     * blocking, depending on the transport.
+     */
+    abstract class Upload implements Callable<ResponseEntity<String>> {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public ResponseEntity<String> call() throws Exception {
+            return logged(post(restTemplate, getKey(), getUploadPath(), getEntity()));
+        }
+
+        /**
+         * Post without blocking, which requires an asynchronous transport.
+         */
+        CompletableFuture<ResponseEntity<String>> send() {
+            try {
+                return postAsync(asyncTemplate, getKey(), getUploadPath(), getEntity()).thenApply(this::logged);
+            } catch (IOException e) {
+                CompletableFuture<ResponseEntity<String>> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                return failed;
+            }
+        }
+
+        /**
+         * @return routing key of the upload, or null if it may go to any node
+         */
+        abstract String getKey();
+
+        abstract String getUploadPath();
+
+        abstract HttpEntity<?> getEntity() throws IOException;
+
+        /**
+         * @return description of the upload for debug logs
+         */
+        abstract String describe();
+
+        /**
+         * Whether the body is streamed to the connection, and so must be sent blocking.
+         */
+        boolean isStreamed() {
+            return false;
+        }
+
+        ResponseEntity<String> logged(ResponseEntity<String> response) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("{} about to submit", describe());
+                logger.debug("Remote storage responds: {}", response);
+            }
+            return response;
         }
     }
 
     /**
      * Async callable service for uploading test results.
      */
-    private class UploadResults implements Callable<ResponseEntity<String>> {
+    class UploadResults extends Upload {
         private final TestCaseResult result;
 
         UploadResults(TestCaseResult result) {
             this.result = result;
         }
 
+        @Override
+        String getKey() {
+            return routingKey(result);
+        }
+
+        @Override
+        String getUploadPath() {
+            return getPath();
+        }
+
+        /**
+         * Json results are written by the rest template itself, binary ones are encoded beforehand.
+         */
+        @Override
+        HttpEntity<?> getEntity() throws IOException {
+            HttpHeaders headers = headers(result.getIdempotencyKey());
+            if (!encoding.isBinary()) {
+                return new HttpEntity<>(result, headers);
+            }
+            headers.setContentType(MediaType.parseMediaType(encoding.getContentType()));
+            return new HttpEntity<>(encodingMapper.writeValueAsBytes(result), headers);
+        }
+
+        @Override
+        String describe() {
+            return "Test case result " + result;
+        }
+    }
+
+    /**
+     * Async callable service for uploading a batch of test results to the bulk endpoint.
+     */
+    class UploadBatch extends Upload {
+        private final ResultBatch batch;
+
+        UploadBatch(ResultBatch batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        String getKey() {
+            return routingKey(batch.getResults().get(0));
+        }
+
+        @Override
+        String getUploadPath() {
+            return getBulkPath();
+        }
+
+        @Override
+        HttpEntity<?> getEntity() {
+            HttpHeaders headers = headers(IdempotencyKeys.of(runId, batch.getResults()));
+            headers.setContentType(MediaType.parseMediaType(encoding.getBatchContentType(batch.getFormat())));
+            return new HttpEntity<>(batch.getBody(), headers);
+        }
+
+        @Override
+        String describe() {
+            return "Test case result batch " + batch;
+        }
+    }
+
+    /**
+     * Async callable service for listing results unchanged since the previous run.
+     */
+    class UploadUnchanged extends Upload {
+        private final List<TestCaseResult> results;
+
+        UploadUnchanged(List<TestCaseResult> results) {
+            this.results = results;
+        }
+
+        @Override
+        String getKey() {
+            return null;
+        }
+
+        @Override
+        String getUploadPath() {
+            return getDeltaPath();
+        }
+
+        @Override
+        HttpEntity<?> getEntity() {
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("run", runId);
+            body.put("sameAs", index.getPreviousRunId());
+            body.put("version", getVersion());
+            body.put("cases", results.stream().map(r -> {
+                Map<String, Object> name = new LinkedHashMap<>();
+                name.put("suiteName", r.getSuiteName());
+                name.put("testName", r.getTestName());
+                name.put("className", r.getClassName());
+                name.put("caseName", r.getCaseName());
+                name.put("duration", r.getDuration());
+                return name;
+            }).collect(Collectors.toList()));
+            return new HttpEntity<>(body, headers(IdempotencyKeys.of(runId, results)));
+        }
+
+        @Override
+        String describe() {
+            return results.size() + " unchanged test case results";
+        }
+    }
+
+    /**
+     * Async callable service for uploading a chunk of outputs referenced by test results.
+     */
+    class UploadOutputChunk extends Upload {
+        private final OutputChunk chunk;
+
+        UploadOutputChunk(OutputChunk chunk) {
+            this.chunk = chunk;
+        }
+
+        @Override
+        String getKey() {
+            return chunk.getHash();
+        }
+
+        @Override
+        String getUploadPath() {
+            return getOutputsPath(chunk.getHash());
+        }
+
+        @Override
+        HttpEntity<?> getEntity() {
+            HttpHeaders headers = headers(IdempotencyKeys.of(runId, chunk.getHash(),
+                    String.valueOf(chunk.getIndex())));
+            headers.setContentType(MediaType.parseMediaType("text/plain;charset=UTF-8"));
+            headers.set("X-Chunk-Index", String.valueOf(chunk.getIndex()));
+            headers.set("X-Chunk-Count", String.valueOf(chunk.getCount()));
+            return new HttpEntity<>(chunk.getData(), headers);
+        }
+
+        @Override
+        String describe() {
+            return "Output chunk " + chunk;
+        }
+    }
+
+    /**
+     * Async callable service for uploading a chunk of a file attached to a test result, streamed from disk.
+     */
+    class UploadAttachmentChunk extends Upload {
+        private final TestCaseResult result;
+        private final Attachment attachment;
+        private final FileRegion region;
+        private final int chunk;
+        private final int chunks;
+
+        UploadAttachmentChunk(TestCaseResult result, Attachment attachment, FileRegion region, int chunk,
+                              int chunks) {
+            this.result = result;
+            this.attachment = attachment;
+            this.region = region;
+            this.chunk = chunk;
+            this.chunks = chunks;
+        }
+
         /**
          * {@inheritDoc}
          */
         @Override
         public ResponseEntity<String> call() throws Exception {
-            ResponseEntity<String> response = restTemplate.postForEntity(getUrl(), this.result, String.class);
-            if (logger.isDebugEnabled()) {
-                logger.debug("Test case result about to submit: {}", result);
-                logger.debug("Remote storage responds: {}", response);
-            }
-            return response;
+            return logged(post(streamingTemplate, getKey(), getUploadPath(), getEntity()));
+        }
+
+        @Override
+        String getKey() {
+            return routingKey(result);
+        }
+
+        @Override
+        String getUploadPath() {
+            return getAttachmentsPath();
+        }
+
+        /**
+         * The name is URL-encoded, as headers may only carry ASCII.
+         */
+        @Override
+        HttpEntity<?> getEntity() throws IOException {
+            HttpHeaders headers = headers(IdempotencyKeys.of(runId, result.getIdempotencyKey(), attachment.getName(),
+                    String.valueOf(chunk)));
+            headers.setContentType(MediaType.parseMediaType(attachment.getContentType()));
+            headers.set("X-Result-Key", result.getIdempotencyKey());
+            headers.set("X-Attachment-Name", URLEncoder.encode(attachment.getName(), "UTF-8"));
+            headers.set("X-Chunk-Index", String.valueOf(chunk));
+            headers.set("X-Chunk-Count", String.valueOf(chunks));
+            return new HttpEntity<>(region, headers);
+        }
+
+        @Override
+        String describe() {
+            return "Attachment chunk " + region + " of " + result.getCaseName();
+        }
+
+        @Override
+        boolean isStreamed() {
+            return true;
         }
     }
 }
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.yongchristophertang.reporter.spool.ResultSpool;
+import com.github.yongchristophertang.reporter.testcase.TestCaseResult;
+import com.github.yongchristophertang.reporter.upload.ResultBatcher;
+import javaslang.control.Try;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collect the results handed over by the forks of a run through the aggregation directory, and upload them in
+ * batches over one pool of connections. It runs as a process of its own, next to the forks and with the same
+ * configuration:
+ * <pre>
+ * java -cp ... com.github.yongchristophertang.reporter.ResultCollector [--once]
+ * </pre>
+ * With {@code --once} it uploads what the forks have handed over so far and exits, e.g. after all forks have
+ * finished. Otherwise it keeps collecting until the JVM is stopped.
+ * <p>
+ * A segment is only deleted once all its results have been uploaded or kept in the local spool, and the highest
+ * sequence number collected from each fork is then recorded in the aggregation directory. Results handed over twice,
+ * e.g. replayed after a crash, are thus uploaded once, also across restarts of the collector. Should it die after an
+ * upload but before recording it, the batch is uploaded again under the same idempotency keys.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class ResultCollector extends ReporterService {
+    static final String COLLECTED_FILE = "collected-forks.json";
+    private static final Logger logger = LogManager.getLogger();
+    private final ResultSpool source = openHandoff();
+    private final ObjectMapper reader = new ObjectMapper();
+    private final Path collectedFile = Paths.get(getStorageConfig().getString(STORAGE_AGGREGATION_DIRECTORY))
+            .resolve(COLLECTED_FILE);
+    private final int rememberedForks = getStorageConfig().getInt(STORAGE_AGGREGATION_REMEMBERED_FORKS);
+    private final Map<String, Long> collectedSeqs = loadCollected();
+    private final long settleMillis = getStorageConfig().getDuration(STORAGE_SHUTDOWN_DEADLINE,
+            TimeUnit.MILLISECONDS);
+    private final AtomicLong unspooled = new AtomicLong();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private volatile boolean running = true;
+    private long collected;
+    private long duplicates;
+
+    ResultCollector() {
+        super(false);
+    }
+
+    public static void main(String[] args) {
+        ResultCollector collector = new ResultCollector();
+        if (collector.source == null) {
+            logger.error("Aggregation is not enabled by {}", STORAGE_AGGREGATION_ENABLED);
+            collector.close();
+            return;
+        }
+        if (Arrays.asList(args).contains("--once")) {
+            collector.collectOnce();
+        } else {
+            collector.run();
+        }
+    }
+
+    /**
+     * Collect handed over results every poll interval until the collector is stopped.
+     */
+    void run() {
+        long pollMillis = getStorageConfig().getDuration(STORAGE_AGGREGATION_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+        logger.info("Collecting test case results handed over to {}",
+                getStorageConfig().getString(STORAGE_AGGREGATION_DIRECTORY));
+        try {
+            while (running) {
+                collect();
+                Thread.sleep(pollMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            stopped.countDown();
+        }
+    }
+
+    /**
+     * Upload everything handed over so far, wait for the uploads and close.
+     */
+    void collectOnce() {
+        try {
+            collect();
+        } finally {
+            stopped.countDown();
+        }
+        awaitUploads(System.currentTimeMillis(), null);
+        close();
+    }
+
+    /**
+     * Take the segments the forks have released from the aggregation directory, one after the other.
+     *
+     * @return number of results collected
+     */
+    long collect() {
+        long before = collected;
+        Try.of(() -> source.replaySegments(this::collectSegment))
+                .onFailure(t -> logger.error("Failed to collect handed over test case results", t));
+        long count = collected - before;
+        if (count > 0) {
+            logger.info("{} test case results have been collected, {} in total with {} duplicates dropped", count,
+                    collected, duplicates);
+        }
+        return count;
+    }
+
+    /**
+     * Upload the results of a segment which have not been collected before, and wait for the uploads to settle.
+     * The segment is only done with once every result has been uploaded or kept in the local spool.
+     *
+     * @return whether the segment is done with, otherwise it is kept and collected again
+     */
+    private boolean collectSegment(List<byte[]> records) {
+        unspooled.set(0);
+        List<CompletableFuture<Boolean>> uploads = Collections.synchronizedList(new ArrayList<>());
+        Map<String, Long> seqs = new HashMap<>();
+        long count = 0;
+        long dropped = 0;
+        try (ResultBatcher batcher = createBatcher(b -> uploads.add(upload(new UploadBatch(b), b.getResults())))) {
+            for (byte[] record : records) {
+                JsonNode node = Try.of(() -> reader.readTree(record)).onFailure(t -> logger.warn("Dropped " +
+                        "unreadable handed over record", t)).orElse((JsonNode) null);
+                if (node == null) {
+                    continue;
+                }
+                String fork = node.path("fork").asText();
+                long seq = node.path("seq").asLong();
+                if (seq <= collectedSeqs.getOrDefault(fork, 0L)) {
+                    dropped++;
+                    continue;
+                }
+                seqs.merge(fork, seq, Math::max);
+                count++;
+                ObjectNode result = (ObjectNode) node.get("result");
+                result.set("idempotencyKey", node.get("key"));
+                if (node.has("attachments")) {
+                    result.set("attachments", node.get("attachments"));
+                }
+                Try.run(() -> batcher.add(reader.treeToValue(result, TestCaseResult.class)))
+                        .onFailure(t -> logger.error("Failed to encode handed over test case result {}", node, t));
+            }
+        }
+        if (!settle(uploads)) {
+            logger.warn("Uploads of {} handed over records have not settled within {} ms, they are collected again",
+                    records.size(), settleMillis);
+            return false;
+        }
+        if (unspooled.get() > 0) {
+            logger.warn("{} handed over test case results have neither been uploaded nor spooled, they are " +
+                    "collected again", unspooled.get());
+            return false;
+        }
+        collected += count;
+        duplicates += dropped;
+        collectedSeqs.putAll(seqs);
+        Try.run(this::saveCollected).onFailure(t -> logger.warn("Failed to record collected test case results in {}",
+                collectedFile, t));
+        return true;
+    }
+
+    private boolean settle(List<CompletableFuture<Boolean>> uploads) {
+        try {
+            CompletableFuture.allOf(uploads.toArray(new CompletableFuture[uploads.size()]))
+                    .get(settleMillis, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | TimeoutException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Highest sequence number collected from each fork, the forks collected from least recently dropped first.
+     */
+    private Map<String, Long> loadCollected() {
+        Map<String, Long> seqs = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > rememberedForks;
+            }
+        };
+        if (Files.exists(collectedFile)) {
+            Try.run(() -> seqs.putAll(reader.readValue(collectedFile.toFile(),
+                    new TypeReference<LinkedHashMap<String, Long>>() {
+                    }))).onFailure(t -> logger.warn("Failed to read collected test case results from {}",
+                    collectedFile, t));
+        }
+        return seqs;
+    }
+
+    private void saveCollected() throws IOException {
+        Path temp = collectedFile.resolveSibling(COLLECTED_FILE + ".tmp");
+        reader.writeValue(temp.toFile(), collectedSeqs);
+        Files.move(temp, collectedFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Failed uploads are handed over here, results the spool does not keep hold the segment back.
+     */
+    @Override
+    boolean spool(List<TestCaseResult> results) {
+        boolean kept = super.spool(results);
+        if (!kept) {
+            unspooled.addAndGet(results.size());
+        }
+        return kept;
+    }
+
+    long getCollected() {
+        return collected;
+    }
+
+    long getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * Stop collecting and upload what has been collected before the JVM exits.
+     */
+    @Override
+    void onShutdown() {
+        running = false;
+        Try.run(() -> stopped.await(getStorageConfig().getDuration(STORAGE_SHUTDOWN_HOOK_DEADLINE,
+                TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS));
+        super.onShutdown();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        super.close();
+        if (source != null) {
+            Try.run(source::close);
+        }
+    }
+}
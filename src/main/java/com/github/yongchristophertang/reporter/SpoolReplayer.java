@@ -0,0 +1,113 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.yongchristophertang.reporter.spool.ResultSpool;
+import javaslang.control.Try;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+
+/**
+ * Upload results left in the local spool by previous runs. It is started in the background by
+ * {@link ReporterService}, or can be run standalone with the same configuration:
+ * <pre>
+ * java -cp ... com.github.yongchristophertang.reporter.SpoolReplayer
+ * </pre>
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class SpoolReplayer extends AbstractReporter implements Runnable {
+    /**
+     * Field of a spooled result holding its idempotency key, which is sent as a header rather than in the body.
+     */
+    static final String KEY_FIELD = "idempotencyKey";
+    private static final Logger logger = LogManager.getLogger();
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final String idempotencyHeader = getStorageConfig().getString(STORAGE_IDEMPOTENCY_HEADER);
+    private final RestTemplate restTemplate;
+    private final ResultSpool spool;
+
+    SpoolReplayer(RestTemplate restTemplate, ResultSpool spool) {
+        this.restTemplate = restTemplate;
+        this.spool = spool;
+    }
+
+    private SpoolReplayer() {
+        this.restTemplate = new RestTemplate();
+        this.spool = openSpool();
+    }
+
+    public static void main(String[] args) throws IOException {
+        SpoolReplayer replayer = new SpoolReplayer();
+        if (replayer.spool == null) {
+            logger.error("Local spool is not enabled by {}", STORAGE_SPOOL_ENABLED);
+            return;
+        }
+        try {
+            replayer.run();
+        } finally {
+            replayer.spool.close();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void run() {
+        if (spool == null) {
+            return;
+        }
+        Try.of(() -> spool.replay(record -> Try.of(() -> replay(record)).orElse(false)))
+                .onSuccess(count -> {
+                    if (count > 0) {
+                        logger.info("{} spooled test case results have been replayed to remote storage", count);
+                    }
+                })
+                .onFailure(t -> logger.error("Failed to replay spooled test case results", t));
+    }
+
+    /**
+     * Post a spooled result with the idempotency key it has been spooled with, if any, so that storage drops it
+     * should the original upload have reached it after all.
+     */
+    private boolean replay(byte[] record) throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        JsonNode result = mapper.readTree(record);
+        JsonNode key = result.path(KEY_FIELD);
+        byte[] body = record;
+        if (key.isTextual()) {
+            if (!idempotencyHeader.isEmpty()) {
+                headers.set(idempotencyHeader, key.asText());
+            }
+            body = mapper.writeValueAsBytes(((ObjectNode) result).without(KEY_FIELD));
+        }
+        return post(restTemplate, null, getPath(), new HttpEntity<>(body, headers)).getStatusCode()
+                .is2xxSuccessful();
+    }
+}
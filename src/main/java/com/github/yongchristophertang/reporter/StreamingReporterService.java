@@ -0,0 +1,261 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter;
+
+import com.github.yongchristophertang.reporter.testcase.TestCaseResult;
+import com.github.yongchristophertang.reporter.upload.ResultBatcher;
+import javaslang.control.Try;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.testng.*;
+import org.testng.xml.XmlSuite;
+import org.testng.xml.XmlTest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Submit test results to remote storage while the tests are still running. Each result is built as soon as its
+ * method finishes and put onto a bounded queue, which is drained by background workers submitting the uploads
+ * without waiting for them. By the time TestNG asks for the report, only the tail of the queue is left to be flushed.
+ * In delta mode, results unchanged since the previous run are held back and listed at the end of the run.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class StreamingReporterService extends ReporterService implements IInvokedMethodListener, ITestListener {
+    private static final Logger logger = LogManager.getLogger();
+    private static final TestCaseResult END_OF_RUN = new TestCaseResult.TestCaseResultBuilder("", 0, 0,
+            Collections.emptyList()).createTestCaseResult();
+
+    private final BlockingQueue<TestCaseResult> queue =
+            new ArrayBlockingQueue<>(getStorageConfig().getInt(STORAGE_STREAMING_QUEUE_SIZE));
+    private final int workerCount = getStorageConfig().getInt(STORAGE_STREAMING_WORKERS);
+    private final Map<String, AtomicInteger> ordinals = new ConcurrentHashMap<>();
+    private final List<TestCaseResult> unchanged = Collections.synchronizedList(new ArrayList<>());
+    private ExecutorService workers;
+    private ResultBatcher batcher;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterInvocation(IInvokedMethod method, ITestResult testResult) {
+        String suiteName = getSuiteName(testResult);
+        TestCaseResult result = createResult(suiteName, method, ordinals.computeIfAbsent(
+                invocationOf(suiteName, method), k -> new AtomicInteger()).getAndIncrement());
+        if (result == null || handOff(result)) {
+            return;
+        }
+        start();
+        try {
+            queue.put(result);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Interrupted while queueing test case result {}", result, e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void beforeInvocation(IInvokedMethod method, ITestResult testResult) {
+    }
+
+    /**
+     * Batches are flushed at the end of each test so they do not wait for the linger time.
+     */
+    @Override
+    public void onFinish(ITestContext context) {
+        ResultBatcher current = batcher;
+        if (current != null) {
+            current.flush();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onStart(ITestContext context) {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onTestStart(ITestResult result) {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onTestSuccess(ITestResult result) {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onTestFailure(ITestResult result) {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onTestSkipped(ITestResult result) {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onTestFailedButWithinSuccessPercentage(ITestResult result) {
+    }
+
+    /**
+     * Results have already been streamed during the run, only the remaining ones in the queue are waited for. Results
+     * handed to the {@link ResultCollector} only need their last segment released. Streaming starts over with the
+     * next result, should the service be used for further runs.
+     */
+    @Override
+    public void generateReport(List<XmlSuite> xmlSuites, List<ISuite> suites, String outputDirectory) {
+        ordinals.clear();
+        resetOutputs();
+        if (isHandingOff()) {
+            finishHandoff();
+            return;
+        }
+        if (workers == null) {
+            logger.info("No test case results have been streamed to remote storage");
+            reportMetrics(0, outputDirectory);
+            return;
+        }
+        long flushStart = System.currentTimeMillis();
+        try {
+            stop();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Streaming reporter service has been interrupted while flushing", e);
+        }
+        List<TestCaseResult> held;
+        synchronized (unchanged) {
+            held = new ArrayList<>(unchanged);
+            unchanged.clear();
+        }
+        uploadUnchanged(held);
+        updateIndex(awaitUploads(flushStart, outputDirectory) == 0);
+    }
+
+    /**
+     * Results still queued or held back as unchanged when the JVM exits are kept in the spool rather than uploaded,
+     * as there is little time left; results already taken by the workers are drained as usual.
+     */
+    @Override
+    void onShutdown() {
+        List<TestCaseResult> queued = new ArrayList<>();
+        queue.drainTo(queued);
+        queued.removeIf(r -> r == END_OF_RUN);
+        synchronized (unchanged) {
+            queued.addAll(unchanged);
+            unchanged.clear();
+        }
+        if (!queued.isEmpty()) {
+            logger.info("Keeping {} queued test case results in local spool before exit", queued.size());
+            spool(queued);
+        }
+        ResultBatcher current = batcher;
+        if (current != null) {
+            current.flush();
+        }
+        super.onShutdown();
+    }
+
+    private synchronized void start() {
+        if (workers != null) {
+            return;
+        }
+        if (getStorageConfig().getBoolean(STORAGE_BATCH_ENABLED)) {
+            batcher = createBatcher(b -> upload(new UploadBatch(b), b.getResults()));
+        }
+        workers = Executors.newFixedThreadPool(workerCount, r -> {
+            Thread thread = new Thread(r, "report-storage-streaming");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < workerCount; i++) {
+            workers.execute(this::drain);
+        }
+    }
+
+    /**
+     * Let the workers submit the remaining queued results and flush the last batch, so that streaming starts over
+     * with the next result.
+     */
+    private synchronized void stop() throws InterruptedException {
+        for (int i = 0; i < workerCount; i++) {
+            queue.put(END_OF_RUN);
+        }
+        workers.shutdown();
+        while (!workers.awaitTermination(5, TimeUnit.SECONDS)) {
+            logger.info("Waiting for {} test case results to be submitted", queue.size());
+        }
+        if (batcher != null) {
+            batcher.close();
+        }
+        workers = null;
+        batcher = null;
+    }
+
+    /**
+     * Submit queued results for upload until the end of run marker is taken. Uploads are not waited for, the upload
+     * executor and concurrency limit pace them.
+     */
+    private void drain() {
+        try {
+            for (TestCaseResult result = queue.take(); result != END_OF_RUN; result = queue.take()) {
+                if (isUnchanged(result)) {
+                    unchanged.add(result);
+                } else if (batcher != null) {
+                    TestCaseResult current = result;
+                    Try.run(() -> batcher.add(current))
+                            .onFailure(t -> logger.error("Failed to encode test case result {}", current, t));
+                } else {
+                    upload(new UploadResults(result), Collections.singletonList(result));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Streaming upload has been interrupted with {} results left", queue.size(), e);
+        }
+    }
+
+    private static String getSuiteName(ITestResult testResult) {
+        if (testResult.getTestContext() != null) {
+            return testResult.getTestContext().getSuite().getName();
+        }
+        XmlTest xmlTest = testResult.getMethod().getXmlTest();
+        return xmlTest == null ? null : xmlTest.getSuite().getName();
+    }
+}
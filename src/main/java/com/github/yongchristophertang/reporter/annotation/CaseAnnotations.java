@@ -0,0 +1,82 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.annotation;
+
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * {@link TestCase} and {@link Bug} annotations of a test method or class, looked up once and cached for the
+ * lifetime of the class.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public final class CaseAnnotations {
+    private static final CaseAnnotations NONE = new CaseAnnotations(null, null);
+    private static final ConcurrentMap<Method, CaseAnnotations> METHODS = new ConcurrentHashMap<>();
+    private static final ClassValue<CaseAnnotations> CLASSES = new ClassValue<CaseAnnotations>() {
+        @Override
+        protected CaseAnnotations computeValue(Class<?> type) {
+            return lookup(type);
+        }
+    };
+
+    private final TestCase testCase;
+    private final Bug bug;
+
+    private CaseAnnotations(TestCase testCase, Bug bug) {
+        this.testCase = testCase;
+        this.bug = bug;
+    }
+
+    /**
+     * Annotations present on the given method.
+     */
+    public static CaseAnnotations of(Method method) {
+        return METHODS.computeIfAbsent(method, CaseAnnotations::lookup);
+    }
+
+    /**
+     * Annotations present on the given class.
+     */
+    public static CaseAnnotations of(Class<?> type) {
+        return CLASSES.get(type);
+    }
+
+    private static CaseAnnotations lookup(AnnotatedElement element) {
+        TestCase testCase = element.getAnnotation(TestCase.class);
+        Bug bug = element.getAnnotation(Bug.class);
+        return testCase == null && bug == null ? NONE : new CaseAnnotations(testCase, bug);
+    }
+
+    /**
+     * The {@link TestCase} annotation, or null if absent.
+     */
+    public TestCase getTestCase() {
+        return testCase;
+    }
+
+    /**
+     * The {@link Bug} annotation, or null if absent.
+     */
+    public Bug getBug() {
+        return bug;
+    }
+}
@@ -19,13 +19,14 @@ package com.github.yongchristophertang.reporter.annotation;
 import java.lang.annotation.*;
 
 /**
- * Indication used to submit description and expected result of a test case.
+ * Indication used to submit description and expected result of a test case. Applied to a class, it describes all
+ * test cases of the class which are not annotated themselves.
  *
  * @author Yong Tang
  * @since 0.1
  */
 @Retention(RetentionPolicy.RUNTIME)
-@Target(ElementType.METHOD)
+@Target({ElementType.METHOD, ElementType.TYPE})
 @Documented
 public @interface TestCase {
 
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.attachment;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A file registered against a test, uploaded after the test's result. The file is only read when it is uploaded.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class Attachment {
+    private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+
+    private final String name;
+    private final Path path;
+    private final String contentType;
+
+    /**
+     * @param name        name of the attachment in storage
+     * @param path        the attached file
+     * @param contentType media type of the file, or null to guess it from the file
+     */
+    public Attachment(String name, Path path, String contentType) {
+        this.name = name;
+        this.path = path;
+        this.contentType = contentType != null ? contentType : probeContentType(path);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    @Override
+    public String toString() {
+        return "Attachment{" +
+                "name='" + name + '\'' +
+                ", path=" + path +
+                ", contentType='" + contentType + '\'' +
+                '}';
+    }
+
+    private static String probeContentType(Path path) {
+        try {
+            String probed = Files.probeContentType(path);
+            return probed != null ? probed : DEFAULT_CONTENT_TYPE;
+        } catch (IOException e) {
+            return DEFAULT_CONTENT_TYPE;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.attachment;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.testng.ITestResult;
+import org.testng.Reporter;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Register files against the running test, much as {@link Reporter#log(String)} adds to its output. The reporter
+ * uploads them after the test's result, streaming them from disk.
+ * <pre>
+ * Path screenshot = driver.getScreenshotAs(OutputType.FILE).toPath();
+ * Attachments.attach(screenshot, "image/png");
+ * </pre>
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public final class Attachments {
+    private static final Logger logger = LogManager.getLogger();
+    private static final String ATTRIBUTE = Attachments.class.getName();
+
+    private Attachments() {
+    }
+
+    /**
+     * Attach a file to the running test, guessing its media type.
+     */
+    public static void attach(Path file) {
+        attach(file, null);
+    }
+
+    /**
+     * Attach a file of the given media type to the running test.
+     */
+    public static void attach(Path file, String contentType) {
+        ITestResult result = Reporter.getCurrentTestResult();
+        if (result == null) {
+            logger.warn("No test is running on this thread to attach {} to", file);
+            return;
+        }
+        attach(result, new Attachment(file.getFileName().toString(), file, contentType));
+    }
+
+    /**
+     * Attach a file to the given test, e.g. from a listener.
+     */
+    public static void attach(ITestResult result, Attachment attachment) {
+        synchronized (result) {
+            @SuppressWarnings("unchecked")
+            List<Attachment> attachments = (List<Attachment>) result.getAttribute(ATTRIBUTE);
+            if (attachments == null) {
+                attachments = new ArrayList<>();
+                result.setAttribute(ATTRIBUTE, attachments);
+            }
+            attachments.add(attachment);
+        }
+    }
+
+    /**
+     * @return the files attached to the given test, in the order they were attached
+     */
+    public static List<Attachment> of(ITestResult result) {
+        synchronized (result) {
+            @SuppressWarnings("unchecked")
+            List<Attachment> attachments = (List<Attachment>) result.getAttribute(ATTRIBUTE);
+            return attachments == null ? Collections.emptyList() : new ArrayList<>(attachments);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.attachment;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A range of bytes of a file, sent as a request body straight from the file.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class FileRegion {
+    private final Path path;
+    private final long position;
+    private final long count;
+
+    public FileRegion(Path path, long position, long count) {
+        this.path = path;
+        this.position = position;
+        this.count = count;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Transfer the region to the given stream with {@link FileChannel#transferTo}, which leaves the copying to the
+     * platform rather than reading the region onto the heap. The file is opened anew for each transfer, so that a
+     * region can be sent again.
+     */
+    public void transferTo(OutputStream out) throws IOException {
+        WritableByteChannel target = Channels.newChannel(out);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long end = position + count;
+            for (long next = position; next < end; ) {
+                long transferred = channel.transferTo(next, end - next, target);
+                if (transferred <= 0) {
+                    throw new EOFException("File " + path + " is shorter than " + end + " bytes");
+                }
+                next += transferred;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return path + "[" + position + ".." + (position + count) + ")";
+    }
+}
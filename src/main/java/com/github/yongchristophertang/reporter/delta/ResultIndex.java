@@ -0,0 +1,181 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.delta;
+
+import com.github.yongchristophertang.reporter.testcase.TestCaseResult;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Local index of the results of the last run which has been fully uploaded, used to upload only what changed since.
+ * <p>
+ * Each result is reduced to a 64-bit fingerprint of its suite, test, class and case names together with its status,
+ * outputs and annotated case information. The index file holds the id of the run followed by the fingerprints of all
+ * its results, 8 bytes each. A result whose fingerprint is found in the index is unchanged; cases run several
+ * times, e.g. from a data provider, are matched as many times as they occur in the index.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class ResultIndex {
+    private static final Logger logger = LogManager.getLogger();
+    private static final int MAGIC = 0x52494458;
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private volatile String previousRunId;
+    private volatile Map<Long, Integer> previous;
+    private volatile Map<Long, Integer> matched = new ConcurrentHashMap<>();
+    private volatile Queue<Long> current = new ConcurrentLinkedQueue<>();
+
+    private ResultIndex(String previousRunId, Map<Long, Integer> previous) {
+        this.previousRunId = previousRunId;
+        this.previous = previous;
+    }
+
+    /**
+     * Read the index written by the last fully uploaded run. A missing or unreadable file gives an empty index, so
+     * that all results are uploaded in full.
+     */
+    public static ResultIndex load(Path file) {
+        if (!Files.exists(file)) {
+            return new ResultIndex(null, Collections.emptyMap());
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a result index");
+            }
+            String runId = in.readUTF();
+            int count = in.readInt();
+            List<Long> fingerprints = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                fingerprints.add(in.readLong());
+            }
+            return new ResultIndex(runId, count(fingerprints));
+        } catch (IOException e) {
+            logger.warn("Failed to read result index {}, all results are uploaded in full", file, e);
+            return new ResultIndex(null, Collections.emptyMap());
+        }
+    }
+
+    /**
+     * Id of the run the index has been written by, or null if there is none.
+     */
+    public String getPreviousRunId() {
+        return previousRunId;
+    }
+
+    /**
+     * Record a result of the current run.
+     *
+     * @return whether the same result has been uploaded by the previous run
+     */
+    public boolean add(TestCaseResult result) {
+        long fingerprint = fingerprint(result);
+        current.add(fingerprint);
+        Integer count = previous.get(fingerprint);
+        return count != null && matched.merge(fingerprint, 1, Integer::sum) <= count;
+    }
+
+    /**
+     * Forget the results recorded for the current run, so that the next run is compared with the same previous run
+     * again, e.g. because the current one has not been fully uploaded.
+     */
+    public void reset() {
+        matched = new ConcurrentHashMap<>();
+        current = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Replace the index file with the results recorded for the current run, which then becomes the previous run of
+     * the next one.
+     */
+    public void save(Path file, String runId) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        List<Long> fingerprints = new ArrayList<>(current);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeUTF(runId);
+            out.writeInt(fingerprints.size());
+            for (long fingerprint : fingerprints) {
+                out.writeLong(fingerprint);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        previous = count(fingerprints);
+        previousRunId = runId;
+        reset();
+    }
+
+    /**
+     * Occurrences of each fingerprint.
+     */
+    private static Map<Long, Integer> count(List<Long> fingerprints) {
+        Map<Long, Integer> counts = new HashMap<>(fingerprints.size() * 4 / 3 + 1);
+        fingerprints.forEach(fingerprint -> counts.merge(fingerprint, 1, Integer::sum));
+        return counts;
+    }
+
+    static long fingerprint(TestCaseResult result) {
+        Hasher hasher = HASH.newHasher();
+        put(hasher, result.getSuiteName());
+        put(hasher, result.getTestName());
+        put(hasher, result.getClassName());
+        put(hasher, result.getCaseName());
+        hasher.putInt(result.getStatus()).putBoolean(result.isConfiguration()).putBoolean(result.isSlim());
+        hasher.putInt(result.getOutputs().size());
+        result.getOutputs().forEach(output -> put(hasher, output));
+        put(hasher, result.getOutputsRef());
+        put(hasher, result.getBug());
+        put(hasher, result.getCaseDescription());
+        put(hasher, result.getExpectedResult());
+        return hasher.hash().asLong();
+    }
+
+    private static void put(Hasher hasher, String value) {
+        if (value == null) {
+            hasher.putInt(-1);
+        } else {
+            hasher.putInt(value.length()).putString(value, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.metrics;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.AsyncClientHttpRequest;
+import org.springframework.http.client.AsyncClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.util.concurrent.ListenableFuture;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+
+/**
+ * Counterpart of {@link SentBytesRequestFactory} for requests sent without blocking.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class SentBytesAsyncRequestFactory implements AsyncClientHttpRequestFactory {
+    private final AsyncClientHttpRequestFactory delegate;
+    private final UploadMetrics metrics;
+
+    public SentBytesAsyncRequestFactory(AsyncClientHttpRequestFactory delegate, UploadMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public AsyncClientHttpRequest createAsyncRequest(URI uri, HttpMethod httpMethod) throws IOException {
+        return new SentBytesRequest(delegate.createAsyncRequest(uri, httpMethod));
+    }
+
+    private class SentBytesRequest implements AsyncClientHttpRequest {
+        private final AsyncClientHttpRequest request;
+        private OutputStream body;
+
+        SentBytesRequest(AsyncClientHttpRequest request) {
+            this.request = request;
+        }
+
+        @Override
+        public ListenableFuture<ClientHttpResponse> executeAsync() throws IOException {
+            return request.executeAsync();
+        }
+
+        @Override
+        public OutputStream getBody() throws IOException {
+            if (body == null) {
+                body = new SentBytesBody(request.getBody(), metrics);
+            }
+            return body;
+        }
+
+        @Override
+        public HttpMethod getMethod() {
+            return request.getMethod();
+        }
+
+        @Override
+        public URI getURI() {
+            return request.getURI();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return request.getHeaders();
+        }
+    }
+}
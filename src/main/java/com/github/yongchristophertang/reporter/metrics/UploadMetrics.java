@@ -0,0 +1,277 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.metrics;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency percentiles of the uploads of one run. Recording is lock free; latencies go through an
+ * HdrHistogram {@link Recorder} and are only merged when read.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class UploadMetrics implements UploadMetricsMXBean {
+    private static final Logger logger = LogManager.getLogger();
+    private static final String DOMAIN = "com.github.yongchristophertang.reporter";
+    private static final AtomicInteger instances = new AtomicInteger();
+
+    private final Recorder recorder = new Recorder(3);
+    private final Histogram latencies = new Histogram(3);
+    private Histogram interval;
+
+    private final LongAdder uploads = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder attempts = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger concurrencyLimit = new AtomicInteger(-1);
+    private final AtomicLong flushMillis = new AtomicLong(-1);
+    private volatile ObjectName name;
+
+    public void onQueued() {
+        queued.incrementAndGet();
+    }
+
+    public void onRejected() {
+        queued.decrementAndGet();
+    }
+
+    public void onStarted() {
+        queued.decrementAndGet();
+        inFlight.incrementAndGet();
+    }
+
+    /**
+     * @param nanos time taken by the attempt
+     */
+    public void onAttempted(long nanos) {
+        inFlight.decrementAndGet();
+        attempts.increment();
+        recorder.recordValue(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    public void onRetry() {
+        retries.increment();
+    }
+
+    public void onHedged() {
+        hedges.increment();
+    }
+
+    /**
+     * @param limit attempts allowed in flight at the moment
+     */
+    public void onLimit(int limit) {
+        concurrencyLimit.set(limit);
+    }
+
+    public void onSent(long bytes) {
+        bytesSent.add(bytes);
+    }
+
+    public void onCompleted(boolean success) {
+        (success ? uploads : failures).increment();
+    }
+
+    public void onFlushed(long millis) {
+        flushMillis.set(millis);
+    }
+
+    /**
+     * Expose these metrics through the platform MBean server, under a name unique to this run.
+     */
+    public void register() {
+        try {
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=UploadMetrics,name=run-" +
+                    instances.incrementAndGet());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            name = objectName;
+        } catch (JMException e) {
+            logger.warn("Failed to register upload metrics with JMX", e);
+        }
+    }
+
+    public void unregister() {
+        ObjectName objectName = name;
+        if (objectName == null) {
+            return;
+        }
+        name = null;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            logger.warn("Failed to unregister upload metrics from JMX", e);
+        }
+    }
+
+    /**
+     * @return all metrics by name, in a stable order
+     */
+    public Map<String, Object> getSummary() {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("uploads", getUploads());
+        summary.put("failures", getFailures());
+        summary.put("attempts", getAttempts());
+        summary.put("retries", getRetries());
+        summary.put("hedges", getHedges());
+        summary.put("concurrencyLimit", getConcurrencyLimit());
+        summary.put("bytesSent", getBytesSent());
+        summary.put("flushMillis", getFlushMillis());
+        Map<String, Object> latency = new LinkedHashMap<>();
+        synchronized (this) {
+            Histogram histogram = merge();
+            latency.put("count", histogram.getTotalCount());
+            latency.put("mean", histogram.getMean() / 1000);
+            latency.put("p50", millis(histogram.getValueAtPercentile(50)));
+            latency.put("p90", millis(histogram.getValueAtPercentile(90)));
+            latency.put("p99", millis(histogram.getValueAtPercentile(99)));
+            latency.put("p999", millis(histogram.getValueAtPercentile(99.9)));
+            latency.put("max", millis(histogram.getMaxValue()));
+        }
+        summary.put("latencyMillis", latency);
+        return summary;
+    }
+
+    @Override
+    public long getUploads() {
+        return uploads.sum();
+    }
+
+    @Override
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    @Override
+    public long getAttempts() {
+        return attempts.sum();
+    }
+
+    @Override
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    @Override
+    public long getHedges() {
+        return hedges.sum();
+    }
+
+    @Override
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    @Override
+    public int getQueued() {
+        return queued.get();
+    }
+
+    @Override
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    @Override
+    public int getConcurrencyLimit() {
+        return concurrencyLimit.get();
+    }
+
+    @Override
+    public synchronized double getLatencyMeanMillis() {
+        return merge().getMean() / 1000;
+    }
+
+    @Override
+    public double getLatencyP50Millis() {
+        return percentile(50);
+    }
+
+    @Override
+    public double getLatencyP90Millis() {
+        return percentile(90);
+    }
+
+    @Override
+    public double getLatencyP99Millis() {
+        return percentile(99);
+    }
+
+    @Override
+    public double getLatencyP999Millis() {
+        return percentile(99.9);
+    }
+
+    @Override
+    public synchronized double getLatencyMaxMillis() {
+        return millis(merge().getMaxValue());
+    }
+
+    @Override
+    public long getFlushMillis() {
+        return flushMillis.get();
+    }
+
+    /**
+     * @return latency of attempts at the given percentile, 0 before any attempt
+     */
+    public synchronized double getLatencyMillis(double percentile) {
+        return percentile(percentile);
+    }
+
+    private synchronized double percentile(double percentile) {
+        return millis(merge().getValueAtPercentile(percentile));
+    }
+
+    /**
+     * Fold the latencies recorded since the last read into the total. Callers hold the lock.
+     */
+    private Histogram merge() {
+        interval = recorder.getIntervalHistogram(interval);
+        latencies.add(interval);
+        return latencies;
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+
+    @Override
+    public String toString() {
+        String limit = getConcurrencyLimit() < 0 ? "" : ", concurrency limit " + getConcurrencyLimit();
+        return String.format("%d uploads, %d failures, %d retries, %d bytes sent, latency p50 %.1f ms, p99 %.1f ms, " +
+                        "max %.1f ms, flushed in %d ms%s", getUploads(), getFailures(), getRetries(), getBytesSent(),
+                getLatencyP50Millis(), getLatencyP99Millis(), getLatencyMaxMillis(), getFlushMillis(), limit);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.metrics;
+
+/**
+ * Management view of {@link UploadMetrics}. Latencies are those of single upload attempts, from the moment an attempt
+ * starts running on an upload worker until the storage has answered.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public interface UploadMetricsMXBean {
+    /**
+     * @return uploads which eventually succeeded
+     */
+    long getUploads();
+
+    /**
+     * @return uploads given up after their last attempt, or not attempted at all
+     */
+    long getFailures();
+
+    long getAttempts();
+
+    long getRetries();
+
+    /**
+     * @return second copies sent of attempts taking too long
+     */
+    long getHedges();
+
+    /**
+     * @return request body bytes, before any compression
+     */
+    long getBytesSent();
+
+    /**
+     * @return attempts waiting for an upload worker
+     */
+    int getQueued();
+
+    /**
+     * @return attempts being sent to the storage
+     */
+    int getInFlight();
+
+    /**
+     * @return attempts allowed in flight at the moment, -1 if they are not limited
+     */
+    int getConcurrencyLimit();
+
+    double getLatencyMeanMillis();
+
+    double getLatencyP50Millis();
+
+    double getLatencyP90Millis();
+
+    double getLatencyP99Millis();
+
+    double getLatencyP999Millis();
+
+    double getLatencyMaxMillis();
+
+    /**
+     * @return time spent at the end of the run waiting for pending uploads, -1 until the run has ended
+     */
+    long getFlushMillis();
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.output;
+
+/**
+ * One piece of a full output block uploaded separately from the test case results referencing it.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class OutputChunk {
+    private final String hash;
+    private final int index;
+    private final int count;
+    private final byte[] data;
+
+    OutputChunk(String hash, int index, int count, byte[] data) {
+        this.hash = hash;
+        this.index = index;
+        this.count = count;
+        this.data = data;
+    }
+
+    /**
+     * Hash of the whole output block, as referenced by {@code outputsRef} of the results.
+     */
+    public String getHash() {
+        return hash;
+    }
+
+    /**
+     * Position of this chunk in the block, starting from 0.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Number of chunks of the block.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * UTF-8 bytes of this chunk, which may end in the middle of a character continued by the next chunk.
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    @Override
+    public String toString() {
+        return "OutputChunk{" +
+                "hash='" + hash + '\'' +
+                ", index=" + index +
+                ", count=" + count +
+                ", bytes=" + data.length +
+                '}';
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.output;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Keep the outputs carried by each test case result small.
+ * <p>
+ * Outputs exceeding the line or byte caps are cut in the middle, keeping their head and tail. Outputs of at least
+ * the external size are uploaded separately in chunks, identified by the SHA-256 hash of their content, and the
+ * result references them by that hash, only carrying a preview of them cut to the preview caps. Identical outputs are
+ * uploaded only once per report, unless a chunk of them fails to upload, in which case the next result with the same
+ * outputs uploads them again.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class OutputProcessor {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final int maxLines;
+    private final long maxBytes;
+    private final long externalMinSize;
+    private final int chunkSize;
+    private final int previewLines;
+    private final long previewBytes;
+    private final Function<OutputChunk, CompletableFuture<Boolean>> externalSink;
+    private final Map<String, CompletableFuture<Boolean>> uploads = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxLines        maximum number of lines kept in a result, non-positive for no cap
+     * @param maxBytes        maximum number of UTF-8 bytes kept in a result, non-positive for no cap
+     * @param externalMinSize outputs of at least this many bytes are uploaded separately, non-positive to never do so
+     * @param chunkSize       maximum size of a chunk of separately uploaded outputs
+     * @param previewLines    maximum number of lines of separately uploaded outputs kept in a result, non-positive
+     *                        for none
+     * @param previewBytes    maximum number of UTF-8 bytes of separately uploaded outputs kept in a result,
+     *                        non-positive for none
+     * @param externalSink    uploads chunks of separate outputs, completing with whether the chunk has been uploaded
+     */
+    public OutputProcessor(int maxLines, long maxBytes, long externalMinSize, int chunkSize, int previewLines,
+                           long previewBytes, Function<OutputChunk, CompletableFuture<Boolean>> externalSink) {
+        this.maxLines = maxLines > 0 ? maxLines : Integer.MAX_VALUE;
+        this.maxBytes = maxBytes > 0 ? maxBytes : Long.MAX_VALUE;
+        this.externalMinSize = externalMinSize > 0 ? externalMinSize : Long.MAX_VALUE;
+        this.chunkSize = chunkSize;
+        this.previewLines = Math.min(this.maxLines, Math.max(previewLines, 0));
+        this.previewBytes = Math.min(this.maxBytes, Math.max(previewBytes, 0));
+        this.externalSink = externalSink;
+    }
+
+    /**
+     * Outputs to carry in the result, together with the reference to the full outputs if they are uploaded
+     * separately, in which case only a preview of them is carried.
+     */
+    public Processed process(List<String> outputs) {
+        long bytes = 0;
+        for (String line : outputs) {
+            bytes += utf8Length(line);
+        }
+        String ref = null;
+        if (bytes >= externalMinSize) {
+            byte[] block = String.join("\n", outputs).getBytes(StandardCharsets.UTF_8);
+            ref = hash(block);
+            CompletableFuture<Boolean> upload = new CompletableFuture<>();
+            if (uploads.putIfAbsent(ref, upload) == null) {
+                upload(ref, block, upload);
+            }
+        }
+        if (ref != null) {
+            if (previewLines == 0 || previewBytes == 0) {
+                return new Processed(Collections.emptyList(), ref);
+            }
+            return new Processed(outputs.size() <= previewLines && bytes <= previewBytes ? outputs :
+                    truncate(outputs, previewLines, previewBytes), ref);
+        }
+        return new Processed(outputs.size() <= maxLines && bytes <= maxBytes ? outputs :
+                truncate(outputs, maxLines, maxBytes), ref);
+    }
+
+    /**
+     * Forget the outputs uploaded so far, so that the next report uploads them again.
+     */
+    public void reset() {
+        uploads.clear();
+    }
+
+    /**
+     * Upload a block of outputs in chunks. Should any chunk fail, the block is forgotten again.
+     */
+    private void upload(String ref, byte[] block, CompletableFuture<Boolean> upload) {
+        int count = (block.length + chunkSize - 1) / chunkSize;
+        List<CompletableFuture<Boolean>> chunks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            chunks.add(externalSink.apply(new OutputChunk(ref, i, count,
+                    Arrays.copyOfRange(block, i * chunkSize, Math.min(block.length, (i + 1) * chunkSize)))));
+        }
+        CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[count]))
+                .thenApply(v -> chunks.stream().allMatch(CompletableFuture::join))
+                .whenComplete((uploaded, t) -> {
+                    boolean succeeded = Boolean.TRUE.equals(uploaded);
+                    if (!succeeded) {
+                        uploads.remove(ref, upload);
+                    }
+                    upload.complete(succeeded);
+                });
+    }
+
+    /**
+     * Keep lines from the head and from the tail, each within half of the caps, and mark the lines in between as
+     * truncated.
+     */
+    private static List<String> truncate(List<String> outputs, int maxLines, long maxBytes) {
+        int lineBudget = Math.max(maxLines - 1, 0);
+        int headLines = 0;
+        long headBytes = 0;
+        while (headLines < outputs.size() && headLines < (lineBudget + 1) / 2) {
+            long length = utf8Length(outputs.get(headLines));
+            if (headBytes + length > maxBytes - maxBytes / 2) {
+                break;
+            }
+            headBytes += length;
+            headLines++;
+        }
+        int tailStart = outputs.size();
+        long tailBytes = 0;
+        while (tailStart > headLines && outputs.size() - tailStart < lineBudget / 2) {
+            long length = utf8Length(outputs.get(tailStart - 1));
+            if (tailBytes + length > maxBytes / 2) {
+                break;
+            }
+            tailBytes += length;
+            tailStart--;
+        }
+
+        List<String> kept = new ArrayList<>(outputs.subList(0, headLines));
+        kept.add("... " + (tailStart - headLines) + " lines truncated ...");
+        kept.addAll(outputs.subList(tailStart, outputs.size()));
+        return Collections.unmodifiableList(kept);
+    }
+
+    private static long utf8Length(String s) {
+        long length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static String hash(byte[] block) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(block);
+            char[] hex = new char[digest.length * 2];
+            for (int i = 0; i < digest.length; i++) {
+                hex[i * 2] = HEX[(digest[i] >> 4) & 0xf];
+                hex[i * 2 + 1] = HEX[digest[i] & 0xf];
+            }
+            return new String(hex);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Outputs to carry in a result.
+     */
+    public static class Processed {
+        /**
+         * No outputs at all.
+         */
+        public static final Processed NONE = new Processed(Collections.emptyList(), null);
+
+        private final List<String> outputs;
+        private final String ref;
+
+        Processed(List<String> outputs, String ref) {
+            this.outputs = outputs;
+            this.ref = ref;
+        }
+
+        public List<String> getOutputs() {
+            return outputs;
+        }
+
+        /**
+         * Hash of the separately uploaded full outputs, or null if the outputs are carried in full.
+         */
+        public String getRef() {
+            return ref;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.routing;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One storage node, together with the health and load observed by the uploads sent to it.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class Endpoint {
+    private final String baseUrl;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private int failures;
+    private long ejectedUntil;
+
+    /**
+     * @param baseUrl protocol, host and port of the node, e.g. {@code http://127.0.0.1:8080}
+     */
+    public Endpoint(String baseUrl) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    /**
+     * Url of the given path on this node.
+     */
+    public String getUrl(String path) {
+        return path.startsWith("/") ? baseUrl + path : baseUrl + "/" + path;
+    }
+
+    /**
+     * Number of uploads currently sent to this node.
+     */
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    void acquire() {
+        outstanding.incrementAndGet();
+    }
+
+    /**
+     * Record the completion of an upload, ejecting the node after too many consecutive failures.
+     *
+     * @return whether the node has just been ejected
+     */
+    synchronized boolean release(boolean healthy, int ejectAfter, long ejectMillis, long now) {
+        outstanding.decrementAndGet();
+        if (healthy) {
+            failures = 0;
+            return false;
+        }
+        if (++failures >= ejectAfter && ejectAfter > 0 && ejectedUntil <= now) {
+            ejectedUntil = now + ejectMillis;
+            failures = 0;
+            return true;
+        }
+        return false;
+    }
+
+    synchronized boolean isAvailable(long now) {
+        return ejectedUntil <= now;
+    }
+
+    synchronized long getEjectedUntil() {
+        return ejectedUntil;
+    }
+
+    @Override
+    public String toString() {
+        return baseUrl;
+    }
+}
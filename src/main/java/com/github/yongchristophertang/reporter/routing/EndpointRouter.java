@@ -0,0 +1,168 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.routing;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Spread uploads over several storage nodes. Nodes failing several times in a row are ejected from the selection for
+ * a while, and re-admitted once that time has passed. If all nodes are ejected, the one re-admitted first is used.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class EndpointRouter {
+    private static final Logger logger = LogManager.getLogger();
+    private static final int VIRTUAL_NODES = 128;
+    private static final HashFunction HASH = Hashing.murmur3_32();
+
+    private final List<Endpoint> endpoints;
+    private final Strategy strategy;
+    private final int ejectAfter;
+    private final long ejectMillis;
+    private final LongSupplier clock;
+    private final AtomicInteger next = new AtomicInteger();
+    private final NavigableMap<Integer, Endpoint> ring = new TreeMap<>();
+
+    /**
+     * @param endpoints   storage nodes, at least one
+     * @param strategy    how a node is selected for an upload
+     * @param ejectAfter  consecutive failures after which a node is ejected, non-positive to never eject
+     * @param ejectMillis time in milliseconds an ejected node is left out
+     */
+    public EndpointRouter(List<Endpoint> endpoints, Strategy strategy, int ejectAfter, long ejectMillis) {
+        this(endpoints, strategy, ejectAfter, ejectMillis, System::currentTimeMillis);
+    }
+
+    EndpointRouter(List<Endpoint> endpoints, Strategy strategy, int ejectAfter, long ejectMillis,
+                   LongSupplier clock) {
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("At least one storage endpoint is required");
+        }
+        this.endpoints = Collections.unmodifiableList(new ArrayList<>(endpoints));
+        this.strategy = strategy;
+        this.ejectAfter = ejectAfter;
+        this.ejectMillis = ejectMillis;
+        this.clock = clock;
+        for (Endpoint endpoint : endpoints) {
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                ring.put(HASH.hashString(endpoint.getBaseUrl() + "#" + i, StandardCharsets.UTF_8).asInt(), endpoint);
+            }
+        }
+    }
+
+    public List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * Select the node for an upload, and count the upload as outstanding on it until
+     * {@link #release(Endpoint, boolean)}.
+     *
+     * @param key key of the uploaded data for consistent hashing, uploads without key are spread round robin
+     */
+    public Endpoint acquire(String key) {
+        long now = clock.getAsLong();
+        Endpoint endpoint = null;
+        if (endpoints.size() == 1) {
+            endpoint = endpoints.get(0);
+        } else if (strategy == Strategy.CONSISTENT_HASH && key != null) {
+            endpoint = hashed(key, now);
+        } else if (strategy == Strategy.LEAST_OUTSTANDING) {
+            endpoint = leastOutstanding(now);
+        }
+        if (endpoint == null) {
+            endpoint = roundRobin(now);
+        }
+        endpoint.acquire();
+        return endpoint;
+    }
+
+    /**
+     * Complete an upload sent to the given node.
+     *
+     * @param healthy false if the upload failed because of the node, e.g. it is unreachable or answers 5xx
+     */
+    public void release(Endpoint endpoint, boolean healthy) {
+        if (endpoint.release(healthy, endpoints.size() > 1 ? ejectAfter : 0, ejectMillis, clock.getAsLong())) {
+            logger.warn("Storage endpoint {} keeps failing, ejected for {} ms", endpoint, ejectMillis);
+        }
+    }
+
+    private Endpoint hashed(String key, long now) {
+        int hash = HASH.hashString(key, StandardCharsets.UTF_8).asInt();
+        for (Endpoint endpoint : ring.tailMap(hash, true).values()) {
+            if (endpoint.isAvailable(now)) {
+                return endpoint;
+            }
+        }
+        for (Endpoint endpoint : ring.headMap(hash, false).values()) {
+            if (endpoint.isAvailable(now)) {
+                return endpoint;
+            }
+        }
+        return null;
+    }
+
+    private Endpoint leastOutstanding(long now) {
+        int start = Math.floorMod(next.getAndIncrement(), endpoints.size());
+        Endpoint least = null;
+        for (int i = 0; i < endpoints.size(); i++) {
+            Endpoint endpoint = endpoints.get((start + i) % endpoints.size());
+            if (endpoint.isAvailable(now) && (least == null || endpoint.getOutstanding() < least.getOutstanding())) {
+                least = endpoint;
+            }
+        }
+        return least;
+    }
+
+    private Endpoint roundRobin(long now) {
+        int start = Math.floorMod(next.getAndIncrement(), endpoints.size());
+        for (int i = 0; i < endpoints.size(); i++) {
+            Endpoint endpoint = endpoints.get((start + i) % endpoints.size());
+            if (endpoint.isAvailable(now)) {
+                return endpoint;
+            }
+        }
+        return endpoints.stream().min(Comparator.comparingLong(Endpoint::getEjectedUntil)).get();
+    }
+
+    /**
+     * How a node is selected for an upload.
+     */
+    public enum Strategy {
+        ROUND_ROBIN,
+        LEAST_OUTSTANDING,
+        /**
+         * Uploads with the same key, e.g. results of the same suite and class, go to the same node as long as it is
+         * available.
+         */
+        CONSISTENT_HASH;
+
+        public static Strategy of(String name) {
+            return valueOf(name.trim().replace('-', '_').toUpperCase());
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.spool;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only local spool of encoded results which could not be delivered to remote storage.
+ * <p>
+ * Records are appended to segment files in the spool directory, each framed as a 4-byte length, a 4-byte CRC32 of
+ * the payload and the payload itself. A segment is locked by the process writing it and rolled over once it exceeds
+ * the configured size. Replay maps every unlocked segment, hands over each record with a valid checksum and deletes
+ * the segment afterwards; records rejected during replay are appended to the current segment again. A torn or
+ * corrupted tail, e.g. from a killed process, ends the replay of that segment.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class ResultSpool implements Closeable {
+    static final String SEGMENT_SUFFIX = ".spool";
+    private static final Logger logger = LogManager.getLogger();
+    private static final int HEADER_SIZE = 8;
+
+    private final Path directory;
+    private final long segmentSize;
+    private FileChannel segment;
+    private FileLock segmentLock;
+    private Path segmentPath;
+
+    /**
+     * @param directory   directory holding the segment files, created if absent
+     * @param segmentSize size in bytes after which a new segment is started
+     */
+    public ResultSpool(Path directory, long segmentSize) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Durably append one record to the current segment.
+     */
+    public synchronized void append(byte[] record) throws IOException {
+        if (segment == null || segment.size() >= segmentSize) {
+            roll();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, record.length);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + record.length);
+        buffer.putInt(record.length).putInt((int) crc.getValue()).put(record).flip();
+        while (buffer.hasRemaining()) {
+            segment.write(buffer);
+        }
+        segment.force(false);
+    }
+
+    /**
+     * Replay all records of segments which are neither written by this spool nor locked by another process.
+     *
+     * @param consumer delivers a record, returns false if the record should stay in the spool
+     * @return number of records delivered
+     */
+    public int replay(Predicate<byte[]> consumer) throws IOException {
+        int delivered = 0;
+        for (Path path : listSegments()) {
+            synchronized (this) {
+                if (path.equals(segmentPath)) {
+                    continue;
+                }
+            }
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                FileLock lock = tryLock(channel);
+                if (lock == null) {
+                    continue;
+                }
+                for (byte[] record : read(path, channel)) {
+                    if (consumer.test(record)) {
+                        delivered++;
+                    } else {
+                        append(record);
+                    }
+                }
+                lock.release();
+            }
+            Files.delete(path);
+        }
+        return delivered;
+    }
+
+    /**
+     * Replay segments as a whole, in the order they were started, for consumers which finish with a segment only
+     * after its records have been delivered elsewhere. A segment is deleted once the consumer is done with it, so
+     * that it is replayed again should the process die meanwhile. Replay stops at the first segment the consumer
+     * keeps, which is replayed first next time.
+     *
+     * @param consumer delivers all records of a segment, returns false if the segment should stay in the spool
+     * @return number of segments delivered
+     */
+    public int replaySegments(Predicate<List<byte[]>> consumer) throws IOException {
+        int delivered = 0;
+        for (Path path : listSegments()) {
+            synchronized (this) {
+                if (path.equals(segmentPath)) {
+                    continue;
+                }
+            }
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                FileLock lock = tryLock(channel);
+                if (lock == null) {
+                    continue;
+                }
+                boolean done = consumer.test(read(path, channel));
+                lock.release();
+                if (!done) {
+                    return delivered;
+                }
+            }
+            Files.delete(path);
+            delivered++;
+        }
+        return delivered;
+    }
+
+    /**
+     * Number of segment files currently in the spool directory, including the one written by this spool.
+     */
+    public int getSegmentCount() throws IOException {
+        return listSegments().size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (segment != null) {
+            segmentLock.release();
+            segment.close();
+            if (Files.size(segmentPath) == 0) {
+                Files.delete(segmentPath);
+            }
+            segment = null;
+            segmentPath = null;
+        }
+    }
+
+    private void roll() throws IOException {
+        close();
+        segmentPath = directory.resolve(String.format("segment-%013d-%s%s", System.currentTimeMillis(),
+                UUID.randomUUID(), SEGMENT_SUFFIX));
+        segment = FileChannel.open(segmentPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        segmentLock = segment.lock();
+    }
+
+    private List<Path> listSegments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(segments::add);
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            return null;
+        }
+    }
+
+    private static List<byte[]> read(Path path, FileChannel channel) throws IOException {
+        List<byte[]> records = new ArrayList<>();
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        CRC32 crc = new CRC32();
+        while (buffer.remaining() >= HEADER_SIZE) {
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                logger.warn("Spool segment {} ends with a truncated record, {} bytes are skipped", path,
+                        buffer.remaining() + HEADER_SIZE);
+                return records;
+            }
+            byte[] record = new byte[length];
+            buffer.get(record);
+            crc.reset();
+            crc.update(record, 0, length);
+            if ((int) crc.getValue() != checksum) {
+                logger.warn("Spool segment {} has a corrupted record, the rest of the segment is skipped", path);
+                return records;
+            }
+            records.add(record);
+        }
+        return records;
+    }
+}
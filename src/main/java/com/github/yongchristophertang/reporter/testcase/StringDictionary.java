@@ -0,0 +1,66 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.testcase;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per-run dictionary of the strings shared by many results, such as suite, test and class names. Each distinct
+ * string is kept once and numbered in order of first appearance.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class StringDictionary {
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * @return the instance of the string kept by this dictionary, null for null
+     */
+    public String intern(String value) {
+        return value == null ? null : entry(value).value;
+    }
+
+    /**
+     * @return the id of the string, assigned on its first appearance, or -1 for null
+     */
+    public int id(String value) {
+        return value == null ? -1 : entry(value).id;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private Entry entry(String value) {
+        Entry entry = entries.get(value);
+        return entry != null ? entry : entries.computeIfAbsent(value, v -> new Entry(next.getAndIncrement(), v));
+    }
+
+    private static final class Entry {
+        private final int id;
+        private final String value;
+
+        private Entry(int id, String value) {
+            this.id = id;
+            this.value = value;
+        }
+    }
+}
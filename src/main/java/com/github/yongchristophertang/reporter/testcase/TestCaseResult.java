@@ -16,6 +16,12 @@
 
 package com.github.yongchristophertang.reporter.testcase;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.github.yongchristophertang.reporter.attachment.Attachment;
+
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
@@ -28,6 +34,8 @@ import java.util.List;
  * @author Yong Tang
  * @since 0.1
  */
+@JsonSerialize(using = TestCaseResultSerializer.class)
+@JsonDeserialize(using = TestCaseResultDeserializer.class)
 public class TestCaseResult {
     private final String suiteName;
     private final String testName;
@@ -35,18 +43,27 @@ public class TestCaseResult {
     private final String caseName;
     private final long duration;
     private final List<String> outputs;
+    private final String outputsRef;
     private final boolean configuration;
     private final int status;
     private final String bug;
     private final String caseDescription;
     private final String expectedResult;
     private final String dateTime;
-    private final String version = System.getProperty("test_version", "0.0");
+    private final String version;
+    private final boolean slim;
+    private final String idempotencyKey;
+    private final List<Attachment> attachments;
 
     private TestCaseResult(int status, String suiteName, String testName, String className, String caseName,
-                           long duration, List<String> outputs, boolean configuration, String bug, String caseDescription,
-                           String expectedResult, String dateTime) {
+                           long duration, List<String> outputs, String outputsRef, boolean configuration, String bug,
+                           String caseDescription, String expectedResult, String dateTime, String version,
+                           boolean slim, String idempotencyKey, List<Attachment> attachments) {
         this.status = status;
+        this.version = version;
+        this.slim = slim;
+        this.idempotencyKey = idempotencyKey;
+        this.attachments = Collections.unmodifiableList(attachments);
 
         this.suiteName = suiteName;
         this.testName = testName;
@@ -55,12 +72,38 @@ public class TestCaseResult {
         this.duration = duration;
         this.dateTime = dateTime;
         this.outputs = Collections.unmodifiableList(outputs);
+        this.outputsRef = outputsRef;
         this.configuration = configuration;
         this.bug = bug;
         this.caseDescription = caseDescription;
         this.expectedResult = expectedResult;
     }
 
+    /**
+     * Whether only names, duration and status of this result are uploaded, see
+     * {@link com.github.yongchristophertang.reporter.upload.UploadPolicy.Detail#SLIM}.
+     */
+    @JsonIgnore
+    public boolean isSlim() {
+        return slim;
+    }
+
+    /**
+     * Key identifying the upload of this result over all of its attempts, sent in a header rather than the body.
+     */
+    @JsonIgnore
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    /**
+     * Files registered against the test, uploaded after this result rather than as part of it.
+     */
+    @JsonIgnore
+    public List<Attachment> getAttachments() {
+        return attachments;
+    }
+
     public boolean isConfiguration() {
         return configuration;
     }
@@ -90,6 +133,7 @@ public class TestCaseResult {
                 ", caseName='" + caseName + '\'' +
                 ", duration=" + duration +
                 ", outputs=" + outputs +
+                ", outputsRef='" + outputsRef + '\'' +
                 ", configuration=" + configuration +
                 ", status=" + status +
                 ", bug='" + bug + '\'' +
@@ -97,6 +141,9 @@ public class TestCaseResult {
                 ", expectedResult='" + expectedResult + '\'' +
                 ", dateTime=" + dateTime +
                 ", version='" + version + '\'' +
+                ", slim=" + slim +
+                ", idempotencyKey='" + idempotencyKey + '\'' +
+                ", attachments=" + attachments +
                 '}';
     }
 
@@ -132,10 +179,19 @@ public class TestCaseResult {
         return outputs;
     }
 
+    /**
+     * Hash of the full outputs uploaded separately from this result, if {@link #getOutputs()} holds only part of them.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public String getOutputsRef() {
+        return outputsRef;
+    }
+
     public static final class TestCaseResultBuilder {
         private final String caseNameBuilder;
         private final long durationBuilder;
         private final List<String> outputsBuilder;
+        private String outputsRefBuilder;
         private final int statusBuilder;
         private String suiteNameBuilder;
         private String testNameBuilder;
@@ -145,6 +201,10 @@ public class TestCaseResult {
         private String caseDescriptionBuilder;
         private String expectedResultBuilder;
         private String dateTimeBuilder;
+        private String versionBuilder;
+        private boolean slimBuilder;
+        private String idempotencyKeyBuilder;
+        private List<Attachment> attachmentsBuilder = Collections.emptyList();
 
         /**
          * A builder that is to create a {@link com.github.yongchristophertang.reporter.testcase.TestCaseResult}.
@@ -185,6 +245,14 @@ public class TestCaseResult {
             return this;
         }
 
+        /**
+         * the hash of the full outputs uploaded separately
+         */
+        public TestCaseResultBuilder outputsRef(String outputsRef) {
+            this.outputsRefBuilder = outputsRef;
+            return this;
+        }
+
         /**
          * is this test method a configuration
          */
@@ -226,10 +294,52 @@ public class TestCaseResult {
             return this;
         }
 
+        /**
+         * the execution date of this test case as formatted by {@link #date(long)}
+         */
+        TestCaseResultBuilder dateTime(String dateTime) {
+            this.dateTimeBuilder = dateTime;
+            return this;
+        }
+
+        /**
+         * the version under test, the test_version system property by default
+         */
+        public TestCaseResultBuilder version(String version) {
+            this.versionBuilder = version;
+            return this;
+        }
+
+        /**
+         * upload only names, duration and status of this test case
+         */
+        public TestCaseResultBuilder slim(boolean slim) {
+            this.slimBuilder = slim;
+            return this;
+        }
+
+        /**
+         * the key identifying the upload of this test case over all of its attempts
+         */
+        public TestCaseResultBuilder idempotencyKey(String idempotencyKey) {
+            this.idempotencyKeyBuilder = idempotencyKey;
+            return this;
+        }
+
+        /**
+         * the files registered against this test case
+         */
+        public TestCaseResultBuilder attachments(List<Attachment> attachments) {
+            this.attachmentsBuilder = attachments;
+            return this;
+        }
+
         public TestCaseResult createTestCaseResult() {
             return new TestCaseResult(statusBuilder, suiteNameBuilder, testNameBuilder, classNameBuilder,
-                    caseNameBuilder, durationBuilder, outputsBuilder, configurationBuilder, bugBuilder,
-                    caseDescriptionBuilder, expectedResultBuilder, dateTimeBuilder);
+                    caseNameBuilder, durationBuilder, outputsBuilder, outputsRefBuilder, configurationBuilder,
+                    bugBuilder, caseDescriptionBuilder, expectedResultBuilder, dateTimeBuilder,
+                    versionBuilder != null ? versionBuilder : System.getProperty("test_version", "0.0"),
+                    slimBuilder, idempotencyKeyBuilder, attachmentsBuilder);
         }
     }
 
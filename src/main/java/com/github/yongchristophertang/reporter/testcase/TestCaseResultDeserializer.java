@@ -0,0 +1,66 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.testcase;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.github.yongchristophertang.reporter.attachment.Attachment;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read a {@link TestCaseResult} as written by {@link TestCaseResultSerializer} without a dictionary. Results without
+ * outputs are read as slim ones. The idempotency key and attachments, which are not part of serialized results, are
+ * read if they have been added to them.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class TestCaseResultDeserializer extends StdDeserializer<TestCaseResult> {
+
+    public TestCaseResultDeserializer() {
+        super(TestCaseResult.class);
+    }
+
+    @Override
+    public TestCaseResult deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+        JsonNode node = p.getCodec().readTree(p);
+        List<String> outputs = new ArrayList<>();
+        node.path("outputs").forEach(output -> outputs.add(output.asText()));
+        List<Attachment> attachments = new ArrayList<>();
+        node.path("attachments").forEach(attachment -> attachments.add(new Attachment(text(attachment, "name"),
+                Paths.get(text(attachment, "path")), text(attachment, "contentType"))));
+        return new TestCaseResult.TestCaseResultBuilder(text(node, "caseName"), node.path("duration").asLong(),
+                node.path("status").asInt(), outputs).suiteName(text(node, "suiteName"))
+                .testName(text(node, "testName")).className(text(node, "className"))
+                .outputsRef(text(node, "outputsRef")).configuration(node.path("configuration").asBoolean())
+                .bug(text(node, "bug")).caseDescription(text(node, "caseDescription"))
+                .expectedResult(text(node, "expectedResult")).dateTime(text(node, "dateTime"))
+                .version(text(node, "version")).slim(!node.has("outputs"))
+                .idempotencyKey(text(node, "idempotencyKey")).attachments(attachments).createTestCaseResult();
+    }
+
+    private static String text(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.testcase;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+/**
+ * Write a {@link TestCaseResult} straight to the generator with pre-encoded field names, instead of introspecting
+ * its getters. The output is identical to the bean serialization of Jackson, fields in declaration order.
+ * <p>
+ * Given a {@link StringDictionary}, results are written as records of a run envelope instead: suite, test and class
+ * names are replaced by their ids in the dictionary and the version, which is the same for the whole run, is left
+ * out.
+ * <p>
+ * Slim results are written with their names, duration, configuration flag and status only.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class TestCaseResultSerializer extends StdSerializer<TestCaseResult> {
+    private static final SerializedString SUITE_NAME = new SerializedString("suiteName");
+    private static final SerializedString TEST_NAME = new SerializedString("testName");
+    private static final SerializedString CLASS_NAME = new SerializedString("className");
+    private static final SerializedString CASE_NAME = new SerializedString("caseName");
+    private static final SerializedString DURATION = new SerializedString("duration");
+    private static final SerializedString OUTPUTS = new SerializedString("outputs");
+    private static final SerializedString OUTPUTS_REF = new SerializedString("outputsRef");
+    private static final SerializedString CONFIGURATION = new SerializedString("configuration");
+    private static final SerializedString STATUS = new SerializedString("status");
+    private static final SerializedString BUG = new SerializedString("bug");
+    private static final SerializedString CASE_DESCRIPTION = new SerializedString("caseDescription");
+    private static final SerializedString EXPECTED_RESULT = new SerializedString("expectedResult");
+    private static final SerializedString DATE_TIME = new SerializedString("dateTime");
+    private static final SerializedString VERSION = new SerializedString("version");
+    private static final SerializedString SUITE_ID = new SerializedString("suiteId");
+    private static final SerializedString TEST_ID = new SerializedString("testId");
+    private static final SerializedString CLASS_ID = new SerializedString("classId");
+
+    private final StringDictionary dictionary;
+
+    public TestCaseResultSerializer() {
+        this(null);
+    }
+
+    /**
+     * @param dictionary dictionary of the run envelope, or null to write full results
+     */
+    public TestCaseResultSerializer(StringDictionary dictionary) {
+        super(TestCaseResult.class);
+        this.dictionary = dictionary;
+    }
+
+    @Override
+    public void serialize(TestCaseResult value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        gen.writeStartObject();
+        if (dictionary == null) {
+            gen.writeFieldName(SUITE_NAME);
+            gen.writeString(value.getSuiteName());
+            gen.writeFieldName(TEST_NAME);
+            gen.writeString(value.getTestName());
+            gen.writeFieldName(CLASS_NAME);
+            gen.writeString(value.getClassName());
+        } else {
+            gen.writeFieldName(SUITE_ID);
+            gen.writeNumber(dictionary.id(value.getSuiteName()));
+            gen.writeFieldName(TEST_ID);
+            gen.writeNumber(dictionary.id(value.getTestName()));
+            gen.writeFieldName(CLASS_ID);
+            gen.writeNumber(dictionary.id(value.getClassName()));
+        }
+        gen.writeFieldName(CASE_NAME);
+        gen.writeString(value.getCaseName());
+        gen.writeFieldName(DURATION);
+        gen.writeNumber(value.getDuration());
+        if (value.isSlim()) {
+            writeSlim(value, gen);
+            return;
+        }
+        gen.writeFieldName(OUTPUTS);
+        gen.writeStartArray();
+        for (String output : value.getOutputs()) {
+            gen.writeString(output);
+        }
+        gen.writeEndArray();
+        if (value.getOutputsRef() != null) {
+            gen.writeFieldName(OUTPUTS_REF);
+            gen.writeString(value.getOutputsRef());
+        }
+        gen.writeFieldName(CONFIGURATION);
+        gen.writeBoolean(value.isConfiguration());
+        gen.writeFieldName(STATUS);
+        gen.writeNumber(value.getStatus());
+        gen.writeFieldName(BUG);
+        gen.writeString(value.getBug());
+        gen.writeFieldName(CASE_DESCRIPTION);
+        gen.writeString(value.getCaseDescription());
+        gen.writeFieldName(EXPECTED_RESULT);
+        gen.writeString(value.getExpectedResult());
+        gen.writeFieldName(DATE_TIME);
+        gen.writeString(value.getDateTime());
+        if (dictionary == null) {
+            gen.writeFieldName(VERSION);
+            gen.writeString(value.getVersion());
+        }
+        gen.writeEndObject();
+    }
+
+    private void writeSlim(TestCaseResult value, JsonGenerator gen) throws IOException {
+        gen.writeFieldName(CONFIGURATION);
+        gen.writeBoolean(value.isConfiguration());
+        gen.writeFieldName(STATUS);
+        gen.writeNumber(value.getStatus());
+        if (dictionary == null) {
+            gen.writeFieldName(VERSION);
+            gen.writeString(value.getVersion());
+        }
+        gen.writeEndObject();
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.transport;
+
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.ConnectionConfig;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.ManagedNHttpClientConnectionFactory;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.conn.ManagedNHttpClientConnection;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.nio.reactor.IOSession;
+import org.apache.http.pool.PoolStats;
+import org.springframework.http.client.AsyncClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsAsyncClientHttpRequestFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Transport over a pool of persistent connections served by a few Apache HttpAsyncClient I/O threads. Requests are
+ * sent without blocking the sender, and their responses complete futures on the I/O threads, so that a handful of
+ * threads keep any number of uploads in flight. Blocking requests, e.g. of spool replays or files, go over a separate
+ * {@link PooledTransport}.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class AsyncTransport implements UploadTransport {
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong connections = new AtomicLong();
+    private final PoolingNHttpClientConnectionManager manager;
+    private final CloseableHttpAsyncClient client;
+    private final HttpComponentsAsyncClientHttpRequestFactory factory;
+    private final PooledTransport blocking;
+
+    /**
+     * @param maxTotal       maximum number of connections in the pool
+     * @param maxPerRoute    maximum number of connections to one storage endpoint
+     * @param keepAlive      time in milliseconds an idle connection is kept if the server does not tell otherwise
+     * @param connectTimeout time in milliseconds to establish a connection, and to wait for one from the pool
+     * @param readTimeout    time in milliseconds to wait for a response
+     * @param ioThreads      threads sending requests and receiving responses
+     */
+    public AsyncTransport(int maxTotal, int maxPerRoute, long keepAlive, int connectTimeout, int readTimeout,
+                          int ioThreads) {
+        try {
+            manager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(IOReactorConfig.custom()
+                    .setIoThreadCount(ioThreads).setConnectTimeout(connectTimeout).setSoTimeout(readTimeout).build(),
+                    daemonThreads("report-storage-io-")),
+                    new ManagedNHttpClientConnectionFactory() {
+                        @Override
+                        public ManagedNHttpClientConnection create(IOSession session, ConnectionConfig config) {
+                            connections.incrementAndGet();
+                            return super.create(session, config);
+                        }
+                    }, RegistryBuilder.<SchemeIOSessionStrategy>create()
+                    .register("http", NoopIOSessionStrategy.INSTANCE)
+                    .register("https", SSLIOSessionStrategy.getSystemDefaultStrategy()).build());
+        } catch (IOReactorException e) {
+            throw new UncheckedIOException(e);
+        }
+        manager.setMaxTotal(maxTotal);
+        manager.setDefaultMaxPerRoute(maxPerRoute);
+
+        client = HttpAsyncClients.custom().setConnectionManager(manager)
+                .setThreadFactory(daemonThreads("report-storage-io-reactor-"))
+                .setDefaultRequestConfig(RequestConfig.custom().setConnectTimeout(connectTimeout)
+                        .setConnectionRequestTimeout(connectTimeout).setSocketTimeout(readTimeout).build())
+                .setKeepAliveStrategy((response, context) -> {
+                    long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response,
+                            context);
+                    return duration > 0 ? duration : keepAlive;
+                })
+                .addInterceptorFirst((HttpRequestInterceptor) (request, context) ->
+                        requests.incrementAndGet())
+                .build();
+        client.start();
+        factory = new HttpComponentsAsyncClientHttpRequestFactory(client);
+        blocking = new PooledTransport(maxTotal, maxPerRoute, keepAlive, connectTimeout, readTimeout);
+    }
+
+    /**
+     * TestNG never closes its reporters, so the I/O threads must not keep the JVM alive once the run is over.
+     */
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @Override
+    public ClientHttpRequestFactory getRequestFactory() {
+        return blocking.getRequestFactory();
+    }
+
+    @Override
+    public ClientHttpRequestFactory getStreamingRequestFactory() {
+        return blocking.getStreamingRequestFactory();
+    }
+
+    @Override
+    public AsyncClientHttpRequestFactory getAsyncRequestFactory() {
+        return factory;
+    }
+
+    @Override
+    public long getRequestCount() {
+        return requests.get() + blocking.getRequestCount();
+    }
+
+    @Override
+    public long getConnectionCount() {
+        return connections.get() + blocking.getConnectionCount();
+    }
+
+    /**
+     * Connections of the non-blocking requests currently leased, idle and awaited in the pool.
+     */
+    public PoolStats getPoolStats() {
+        return manager.getTotalStats();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            client.close();
+        } finally {
+            blocking.close();
+        }
+    }
+}
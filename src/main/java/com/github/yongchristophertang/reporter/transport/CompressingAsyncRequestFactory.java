@@ -0,0 +1,97 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.transport;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.AsyncClientHttpRequest;
+import org.springframework.http.client.AsyncClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.util.concurrent.ListenableFuture;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+
+/**
+ * Counterpart of {@link CompressingRequestFactory} for requests sent without blocking.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class CompressingAsyncRequestFactory implements AsyncClientHttpRequestFactory {
+    private final AsyncClientHttpRequestFactory delegate;
+    private final Compression compression;
+    private final int minSize;
+
+    /**
+     * @param delegate    factory of the underlying requests
+     * @param compression encoding applied to large bodies
+     * @param minSize     bodies of at most this many bytes are sent uncompressed
+     */
+    public CompressingAsyncRequestFactory(AsyncClientHttpRequestFactory delegate, Compression compression,
+                                          int minSize) {
+        this.delegate = delegate;
+        this.compression = compression;
+        this.minSize = minSize;
+    }
+
+    @Override
+    public AsyncClientHttpRequest createAsyncRequest(URI uri, HttpMethod httpMethod) throws IOException {
+        return new CompressingRequest(delegate.createAsyncRequest(uri, httpMethod));
+    }
+
+    private class CompressingRequest implements AsyncClientHttpRequest {
+        private final AsyncClientHttpRequest request;
+        private CompressingBody body;
+
+        CompressingRequest(AsyncClientHttpRequest request) {
+            this.request = request;
+        }
+
+        @Override
+        public ListenableFuture<ClientHttpResponse> executeAsync() throws IOException {
+            if (body != null) {
+                body.finish();
+            }
+            return request.executeAsync();
+        }
+
+        @Override
+        public OutputStream getBody() {
+            if (body == null) {
+                body = new CompressingBody(request, compression, minSize);
+            }
+            return body;
+        }
+
+        @Override
+        public HttpMethod getMethod() {
+            return request.getMethod();
+        }
+
+        @Override
+        public URI getURI() {
+            return request.getURI();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return request.getHeaders();
+        }
+    }
+}
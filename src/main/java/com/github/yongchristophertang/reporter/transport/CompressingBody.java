@@ -0,0 +1,85 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.transport;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Body of a request which holds back its first bytes up to a threshold, and compresses all of them straight into the
+ * underlying request body once they outgrow it.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+class CompressingBody extends OutputStream {
+    private final HttpOutputMessage request;
+    private final Compression compression;
+    private final int minSize;
+    private ByteArrayOutputStream head = new ByteArrayOutputStream();
+    private OutputStream compressed;
+
+    CompressingBody(HttpOutputMessage request, Compression compression, int minSize) {
+        this.request = request;
+        this.compression = compression;
+        this.minSize = minSize;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (compressed == null && head.size() + len > minSize) {
+            request.getHeaders().set(HttpHeaders.CONTENT_ENCODING, compression.getEncoding());
+            compressed = compression.wrap(new FilterOutputStream(request.getBody()) {
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    // Leave the request body open for the underlying request to complete
+                    flush();
+                }
+            });
+            head.writeTo(compressed);
+            head = null;
+        }
+        if (compressed != null) {
+            compressed.write(b, off, len);
+        } else {
+            head.write(b, off, len);
+        }
+    }
+
+    void finish() throws IOException {
+        if (compressed != null) {
+            compressed.close();
+        } else if (head.size() > 0) {
+            head.writeTo(request.getBody());
+        }
+    }
+}
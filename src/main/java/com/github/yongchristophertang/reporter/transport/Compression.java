@@ -0,0 +1,75 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.transport;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Content encodings applicable to upload request bodies.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public enum Compression {
+    NONE(null) {
+        @Override
+        OutputStream wrap(OutputStream out) {
+            return out;
+        }
+    },
+    GZIP("gzip") {
+        @Override
+        OutputStream wrap(OutputStream out) throws IOException {
+            return new GZIPOutputStream(out, 8192);
+        }
+    },
+    /**
+     * Zlib wrapped deflate, as the http deflate encoding is defined.
+     */
+    DEFLATE("deflate") {
+        @Override
+        OutputStream wrap(OutputStream out) {
+            return new DeflaterOutputStream(out);
+        }
+    };
+
+    private final String encoding;
+
+    Compression(String encoding) {
+        this.encoding = encoding;
+    }
+
+    public static Compression of(String name) {
+        return valueOf(name.trim().toUpperCase());
+    }
+
+    /**
+     * Value of the Content-Encoding header, or null if the body is sent as is.
+     */
+    public String getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * Compress everything written to the returned stream into the given one. Closing the returned stream finishes
+     * the compressed data and closes the given stream.
+     */
+    abstract OutputStream wrap(OutputStream out) throws IOException;
+}
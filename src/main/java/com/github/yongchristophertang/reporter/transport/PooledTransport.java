@@ -0,0 +1,124 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.transport;
+
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.ConnectionConfig;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ManagedHttpClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.ManagedHttpClientConnectionFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Transport over a pool of persistent Apache HttpClient connections, reused across uploads for as long as the
+ * server keeps them alive.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class PooledTransport implements UploadTransport {
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong connections = new AtomicLong();
+    private final PoolingHttpClientConnectionManager manager;
+    private final CloseableHttpClient client;
+    private final HttpComponentsClientHttpRequestFactory factory;
+    private final HttpComponentsClientHttpRequestFactory streamingFactory;
+
+    /**
+     * @param maxTotal       maximum number of connections in the pool
+     * @param maxPerRoute    maximum number of connections to one storage endpoint
+     * @param keepAlive      time in milliseconds an idle connection is kept if the server does not tell otherwise
+     * @param connectTimeout time in milliseconds to establish a connection, and to wait for one from the pool
+     * @param readTimeout    time in milliseconds to wait for a response
+     */
+    public PooledTransport(int maxTotal, int maxPerRoute, long keepAlive, int connectTimeout, int readTimeout) {
+        manager = new PoolingHttpClientConnectionManager(RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", SSLConnectionSocketFactory.getSocketFactory()).build(),
+                new ManagedHttpClientConnectionFactory() {
+                    @Override
+                    public ManagedHttpClientConnection create(HttpRoute route, ConnectionConfig config) {
+                        connections.incrementAndGet();
+                        return super.create(route, config);
+                    }
+                });
+        manager.setMaxTotal(maxTotal);
+        manager.setDefaultMaxPerRoute(maxPerRoute);
+        manager.setValidateAfterInactivity(1000);
+
+        client = HttpClients.custom().setConnectionManager(manager)
+                .setDefaultRequestConfig(RequestConfig.custom().setConnectTimeout(connectTimeout)
+                        .setConnectionRequestTimeout(connectTimeout).setSocketTimeout(readTimeout).build())
+                .setKeepAliveStrategy((response, context) -> {
+                    long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response,
+                            context);
+                    return duration > 0 ? duration : keepAlive;
+                })
+                .addInterceptorFirst((HttpRequestInterceptor) (request, context) ->
+                        requests.incrementAndGet())
+                .build();
+        factory = new HttpComponentsClientHttpRequestFactory(client);
+        streamingFactory = new HttpComponentsClientHttpRequestFactory(client);
+        streamingFactory.setBufferRequestBody(false);
+    }
+
+    @Override
+    public ClientHttpRequestFactory getRequestFactory() {
+        return factory;
+    }
+
+    @Override
+    public ClientHttpRequestFactory getStreamingRequestFactory() {
+        return streamingFactory;
+    }
+
+    @Override
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    @Override
+    public long getConnectionCount() {
+        return connections.get();
+    }
+
+    /**
+     * Connections currently leased, idle and awaited in the pool.
+     */
+    public PoolStats getPoolStats() {
+        return manager.getTotalStats();
+    }
+
+    @Override
+    public void close() throws IOException {
+        client.close();
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.transport;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Transport over JDK {@link java.net.HttpURLConnection}s, which keeps connections alive as the JDK sees fit.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class SimpleTransport implements UploadTransport {
+    private final AtomicLong requests = new AtomicLong();
+    private final SimpleClientHttpRequestFactory factory = new CountingRequestFactory();
+    private final SimpleClientHttpRequestFactory streamingFactory = new CountingRequestFactory();
+
+    /**
+     * @param connectTimeout time in milliseconds to establish a connection
+     * @param readTimeout    time in milliseconds to wait for a response
+     */
+    public SimpleTransport(int connectTimeout, int readTimeout) {
+        for (SimpleClientHttpRequestFactory f : new SimpleClientHttpRequestFactory[]{factory, streamingFactory}) {
+            f.setConnectTimeout(connectTimeout);
+            f.setReadTimeout(readTimeout);
+        }
+        streamingFactory.setBufferRequestBody(false);
+    }
+
+    @Override
+    public ClientHttpRequestFactory getRequestFactory() {
+        return factory;
+    }
+
+    @Override
+    public ClientHttpRequestFactory getStreamingRequestFactory() {
+        return streamingFactory;
+    }
+
+    @Override
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    @Override
+    public long getConnectionCount() {
+        return -1;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private class CountingRequestFactory extends SimpleClientHttpRequestFactory {
+        @Override
+        public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) throws IOException {
+            requests.incrementAndGet();
+            return super.createRequest(uri, httpMethod);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.transport;
+
+import com.typesafe.config.Config;
+import org.springframework.http.client.AsyncClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpRequestFactory;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connections over which results are uploaded to remote storage.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public interface UploadTransport extends Closeable {
+
+    /**
+     * Create the transport described by the given transport configuration.
+     *
+     * @param config      the {@code report.storage.transport} configuration
+     * @param readTimeout time in milliseconds to wait for a response
+     */
+    static UploadTransport of(Config config, long readTimeout) {
+        int connectTimeout = (int) config.getDuration("connect-timeout", TimeUnit.MILLISECONDS);
+        switch (config.getString("type").trim().toLowerCase()) {
+            case "simple":
+                return new SimpleTransport(connectTimeout, (int) readTimeout);
+            case "pooled":
+                return new PooledTransport(config.getInt("max-total"), config.getInt("max-per-route"),
+                        config.getDuration("keep-alive", TimeUnit.MILLISECONDS), connectTimeout, (int) readTimeout);
+            case "async":
+                return new AsyncTransport(config.getInt("max-total"), config.getInt("max-per-route"),
+                        config.getDuration("keep-alive", TimeUnit.MILLISECONDS), connectTimeout, (int) readTimeout,
+                        config.getInt("io-threads"));
+            default:
+                throw new IllegalArgumentException("Unknown transport type " + config.getString("type"));
+        }
+    }
+
+    /**
+     * Factory of requests sent over this transport.
+     */
+    ClientHttpRequestFactory getRequestFactory();
+
+    /**
+     * Factory of requests over this transport whose bodies are written straight to the connection rather than
+     * buffered, for bodies of a known length such as files.
+     */
+    ClientHttpRequestFactory getStreamingRequestFactory();
+
+    /**
+     * Factory of requests sent over this transport without blocking the sender, or null if the transport only
+     * sends blocking requests.
+     */
+    default AsyncClientHttpRequestFactory getAsyncRequestFactory() {
+        return null;
+    }
+
+    /**
+     * Number of requests sent so far.
+     */
+    long getRequestCount();
+
+    /**
+     * Number of connections opened so far, or -1 if the transport cannot tell.
+     */
+    long getConnectionCount();
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.upload;
+
+import org.springframework.http.ResponseEntity;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Upload which is sent without blocking the sender. {@link RetryingUploader} sends such uploads from whichever thread
+ * starts an attempt, and handles their answers on its executor once they arrive, so that its workers are never held
+ * for a round trip.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+@FunctionalInterface
+public interface AsyncUpload extends Callable<ResponseEntity<String>> {
+
+    /**
+     * Send the upload.
+     *
+     * @return completes with the answer of the storage, or exceptionally as the blocking call would have thrown
+     */
+    CompletableFuture<ResponseEntity<String>> send();
+
+    /**
+     * Send the upload and wait for the answer.
+     */
+    @Override
+    default ResponseEntity<String> call() throws Exception {
+        try {
+            return send().get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.upload;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+/**
+ * Framing of a batch of encoded test case results in one bulk request body.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public enum BatchFormat {
+    /**
+     * All records enclosed in one json array, e.g. {@code [{...},{...}]}.
+     */
+    JSON_ARRAY("application/json") {
+        @Override
+        int overhead(int records) {
+            return records == 0 ? 2 : records + 1;
+        }
+
+        @Override
+        byte[] frame(List<byte[]> records, int size) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+            out.write('[');
+            for (int i = 0; i < records.size(); i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                byte[] record = records.get(i);
+                out.write(record, 0, record.length);
+            }
+            out.write(']');
+            return out.toByteArray();
+        }
+    },
+
+    /**
+     * Newline delimited json, one record per line.
+     */
+    NDJSON("application/x-ndjson") {
+        @Override
+        int overhead(int records) {
+            return records;
+        }
+
+        @Override
+        byte[] frame(List<byte[]> records, int size) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+            for (byte[] record : records) {
+                out.write(record, 0, record.length);
+                out.write('\n');
+            }
+            return out.toByteArray();
+        }
+    },
+
+    /**
+     * A json {@link RunEnvelope}, whose header is written by the envelope of the run; the records are framed as in
+     * a json array here.
+     */
+    ENVELOPE("application/json") {
+        @Override
+        int overhead(int records) {
+            return JSON_ARRAY.overhead(records);
+        }
+
+        @Override
+        byte[] frame(List<byte[]> records, int size) {
+            return JSON_ARRAY.frame(records, size);
+        }
+    },
+
+    /**
+     * Records concatenated as they are, for binary encodings whose documents delimit themselves.
+     */
+    SEQUENCE("application/octet-stream") {
+        @Override
+        int overhead(int records) {
+            return 0;
+        }
+
+        @Override
+        byte[] frame(List<byte[]> records, int size) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+            for (byte[] record : records) {
+                out.write(record, 0, record.length);
+            }
+            return out.toByteArray();
+        }
+    };
+
+    private final String contentType;
+
+    BatchFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    /**
+     * Parse the format from its configuration name, such as json-array or ndjson.
+     */
+    public static BatchFormat of(String name) {
+        return valueOf(name.trim().replace('-', '_').toUpperCase());
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Number of framing bytes added around the given number of records.
+     */
+    abstract int overhead(int records);
+
+    /**
+     * Concatenate encoded records into a bulk body of exactly {@code size} bytes.
+     */
+    abstract byte[] frame(List<byte[]> records, int size);
+}
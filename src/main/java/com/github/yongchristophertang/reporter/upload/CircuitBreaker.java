@@ -0,0 +1,104 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.upload;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Stop sending uploads to an endpoint which keeps failing. After the configured number of consecutive failures the
+ * circuit opens and rejects all uploads; once the open duration has passed a single probe is let through, whose
+ * outcome either closes the circuit again or keeps it open for another period.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class CircuitBreaker {
+    private static final Logger logger = LogManager.getLogger();
+
+    private final int failureThreshold;
+    private final long openMillis;
+    private final LongSupplier clock;
+
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+    private boolean probing;
+
+    /**
+     * @param failureThreshold consecutive failures which open the circuit, non-positive to never open it
+     * @param openMillis       time in milliseconds the circuit stays open before a probe is let through
+     */
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this(failureThreshold, openMillis, System::currentTimeMillis);
+    }
+
+    CircuitBreaker(int failureThreshold, long openMillis, LongSupplier clock) {
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Whether an upload may be sent now.
+     */
+    public synchronized boolean allowRequest() {
+        if (state == State.OPEN && clock.getAsLong() - openedAt >= openMillis) {
+            state = State.HALF_OPEN;
+            probing = false;
+        }
+        if (state == State.HALF_OPEN && !probing) {
+            probing = true;
+            return true;
+        }
+        return state == State.CLOSED;
+    }
+
+    /**
+     * Record an upload which reached the endpoint.
+     */
+    public synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            logger.info("Remote storage is available again, circuit closed");
+        }
+        state = State.CLOSED;
+        failures = 0;
+    }
+
+    /**
+     * Record an upload which failed because of the endpoint.
+     */
+    public synchronized void onFailure() {
+        boolean open = state == State.HALF_OPEN ||
+                state == State.CLOSED && failureThreshold > 0 && ++failures >= failureThreshold;
+        if (open) {
+            logger.error("Remote storage keeps failing, circuit opened for {} ms", openMillis);
+            state = State.OPEN;
+            openedAt = clock.getAsLong();
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.upload;
+
+import com.typesafe.config.Config;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Limit the number of attempts in flight and, optionally, the rate at which they start.
+ * <p>
+ * In adaptive mode the limit follows additive increase, multiplicative decrease: it grows by one per limit's worth
+ * of attempts answered in time, and shrinks by the backoff ratio, at most once per round trip, when an attempt fails
+ * with a retryable error or takes longer than the latency tolerance times the fastest recent round trip. That
+ * baseline slowly drifts upwards, so that storage which has become slower for good is eventually accepted as is.
+ * Otherwise the limit stays at its maximum and only the rate cap, if any, applies.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class ConcurrencyLimiter {
+    private static final Logger logger = LogManager.getLogger();
+    private static final long LATENCY_SLACK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final CompletableFuture<Void> GRANTED = CompletableFuture.completedFuture(null);
+
+    private final boolean adaptive;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double latencyTolerance;
+    private final double backoffRatio;
+    private final TokenBucket bucket;
+    private final LongSupplier clock;
+    private final Deque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+    private double limit;
+    private int inFlight;
+    private long minRttNanos;
+    private long lastDecreaseNanos;
+
+    /**
+     * @param adaptive         whether the limit adapts, otherwise it stays at maxLimit
+     * @param initialLimit     limit to start with in adaptive mode
+     * @param minLimit         lowest limit in adaptive mode
+     * @param maxLimit         highest limit
+     * @param latencyTolerance round trips longer than this multiple of the fastest recent one lower the limit
+     * @param backoffRatio     factor by which the limit is lowered
+     * @param rate             attempts started per second at most, 0 for no cap
+     * @param burst            attempts which may start at once after a quiet period, if the rate is capped
+     */
+    public ConcurrencyLimiter(boolean adaptive, int initialLimit, int minLimit, int maxLimit, double latencyTolerance,
+                              double backoffRatio, double rate, int burst) {
+        this(adaptive, initialLimit, minLimit, maxLimit, latencyTolerance, backoffRatio, rate, burst, System::nanoTime);
+    }
+
+    ConcurrencyLimiter(boolean adaptive, int initialLimit, int minLimit, int maxLimit, double latencyTolerance,
+                       double backoffRatio, double rate, int burst, LongSupplier clock) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Invalid limits " + minLimit + " to " + maxLimit);
+        }
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("Backoff ratio must be in (0, 1): " + backoffRatio);
+        }
+        this.adaptive = adaptive;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyTolerance = latencyTolerance;
+        this.backoffRatio = backoffRatio;
+        this.bucket = rate > 0 ? new TokenBucket(rate, burst, clock) : null;
+        this.clock = clock;
+        this.lastDecreaseNanos = clock.getAsLong();
+        this.limit = adaptive ? Math.max(minLimit, Math.min(maxLimit, initialLimit)) : maxLimit;
+    }
+
+    /**
+     * @param maxLimit highest limit, e.g. the number of upload workers
+     * @return the limiter of the limiter configuration, or null if it neither adapts nor caps the rate
+     */
+    public static ConcurrencyLimiter of(Config config, int maxLimit) {
+        if (!config.getBoolean("adaptive") && config.getDouble("rate") <= 0) {
+            return null;
+        }
+        return new ConcurrencyLimiter(config.getBoolean("adaptive"), config.getInt("initial-limit"),
+                Math.min(config.getInt("min-limit"), maxLimit), maxLimit, config.getDouble("latency-tolerance"),
+                config.getDouble("backoff-ratio"), config.getDouble("rate"), config.getInt("burst"));
+    }
+
+    /**
+     * Wait for a permit to start an attempt, which must be given back by {@link #release(long, boolean)} or
+     * {@link #cancel()}.
+     *
+     * @param timer delays the permit if the rate is capped
+     * @return completes once the attempt may start; a permit of a cancelled future is passed on
+     */
+    public CompletableFuture<Void> acquire(ScheduledExecutorService timer) {
+        CompletableFuture<Void> permit;
+        synchronized (this) {
+            if (inFlight < (int) limit && waiters.isEmpty()) {
+                inFlight++;
+                permit = GRANTED;
+            } else {
+                permit = new CompletableFuture<>();
+                waiters.add(permit);
+            }
+        }
+        if (bucket == null) {
+            return permit;
+        }
+        return permit.thenCompose(v -> {
+            long waitNanos = bucket.reserveNanos();
+            if (waitNanos <= 0) {
+                return GRANTED;
+            }
+            CompletableFuture<Void> delayed = new CompletableFuture<>();
+            try {
+                timer.schedule(() -> delayed.complete(null), waitNanos, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                cancel();
+                delayed.completeExceptionally(e);
+            }
+            return delayed;
+        });
+    }
+
+    /**
+     * Give back the permit of a finished attempt.
+     *
+     * @param rttNanos   round trip time of the attempt
+     * @param overloaded whether the attempt failed in a way suggesting storage is overloaded
+     */
+    public void release(long rttNanos, boolean overloaded) {
+        List<CompletableFuture<Void>> granted;
+        synchronized (this) {
+            inFlight--;
+            if (adaptive) {
+                adapt(rttNanos, overloaded);
+            }
+            granted = grant();
+        }
+        complete(granted);
+    }
+
+    /**
+     * Give back the permit of an attempt which has not been sent.
+     */
+    public void cancel() {
+        List<CompletableFuture<Void>> granted;
+        synchronized (this) {
+            inFlight--;
+            granted = grant();
+        }
+        complete(granted);
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Callers hold the lock.
+     */
+    private void adapt(long rttNanos, boolean overloaded) {
+        minRttNanos = minRttNanos == 0 ? rttNanos : Math.min(rttNanos, minRttNanos + (minRttNanos >> 10));
+        boolean congested = overloaded ||
+                rttNanos > minRttNanos * latencyTolerance && rttNanos - minRttNanos > LATENCY_SLACK_NANOS;
+        long now = clock.getAsLong();
+        if (congested) {
+            if (now - lastDecreaseNanos >= rttNanos) {
+                lastDecreaseNanos = now;
+                int previous = (int) limit;
+                limit = Math.max(minLimit, limit * backoffRatio);
+                if ((int) limit < previous) {
+                    logger.debug("Upload concurrency limit lowered to {}", (int) limit);
+                }
+            }
+        } else if (inFlight + 1 >= limit / 2) {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+    }
+
+    /**
+     * Hand free permits to waiting attempts. Callers hold the lock, and complete the futures after releasing it.
+     */
+    private List<CompletableFuture<Void>> grant() {
+        List<CompletableFuture<Void>> granted = new ArrayList<>();
+        while (inFlight < (int) limit && !waiters.isEmpty()) {
+            inFlight++;
+            granted.add(waiters.poll());
+        }
+        return granted;
+    }
+
+    private void complete(List<CompletableFuture<Void>> granted) {
+        for (CompletableFuture<Void> waiter : granted) {
+            if (!waiter.complete(null)) {
+                cancel();
+            }
+        }
+    }
+
+    /**
+     * Tokens are added at a constant rate up to the burst size, each attempt takes one. An attempt finding no token
+     * takes one in advance and waits for the time it needs to be added.
+     */
+    static class TokenBucket {
+        private final double tokensPerNano;
+        private final double burst;
+        private final LongSupplier clock;
+        private double tokens;
+        private long refilledAt;
+
+        TokenBucket(double rate, int burst, LongSupplier clock) {
+            this.tokensPerNano = rate / TimeUnit.SECONDS.toNanos(1);
+            this.burst = Math.max(1, burst);
+            this.tokens = this.burst;
+            this.clock = clock;
+            this.refilledAt = clock.getAsLong();
+        }
+
+        /**
+         * @return nanoseconds to wait before the reserved token is available
+         */
+        synchronized long reserveNanos() {
+            long now = clock.getAsLong();
+            tokens = Math.min(burst, tokens + (now - refilledAt) * tokensPerNano);
+            refilledAt = now;
+            tokens--;
+            return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / tokensPerNano);
+        }
+    }
+}
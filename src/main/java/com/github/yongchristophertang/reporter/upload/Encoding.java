@@ -0,0 +1,105 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.upload;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+
+/**
+ * Wire encoding of test case results. All encodings carry the same fields, binary ones are smaller and cheaper to
+ * parse for the storage.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public enum Encoding {
+    JSON("application/json", null) {
+        @Override
+        public ObjectMapper createMapper() {
+            return new ObjectMapper();
+        }
+    },
+
+    /**
+     * Jackson's binary json, referring back to property names and short string values already written in the same
+     * document instead of repeating them.
+     */
+    SMILE("application/x-jackson-smile", "application/x-jackson-smile") {
+        @Override
+        public ObjectMapper createMapper() {
+            return new ObjectMapper(new SmileFactory().enable(SmileGenerator.Feature.CHECK_SHARED_NAMES)
+                    .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES));
+        }
+    },
+
+    /**
+     * Concise binary object representation of RFC 7049, batches being sent as a cbor sequence.
+     */
+    CBOR("application/cbor", "application/cbor-seq") {
+        @Override
+        public ObjectMapper createMapper() {
+            return new ObjectMapper(new CBORFactory());
+        }
+    };
+
+    private final String contentType;
+    private final String sequenceContentType;
+
+    Encoding(String contentType, String sequenceContentType) {
+        this.contentType = contentType;
+        this.sequenceContentType = sequenceContentType;
+    }
+
+    /**
+     * Parse the encoding from its configuration name, such as json or smile.
+     */
+    public static Encoding of(String name) {
+        return valueOf(name.trim().toUpperCase());
+    }
+
+    public boolean isBinary() {
+        return this != JSON;
+    }
+
+    /**
+     * Content type of a single encoded result.
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Framing of batches, as configured for json while binary records always go as a {@link BatchFormat#SEQUENCE}.
+     */
+    public BatchFormat getBatchFormat(BatchFormat configured) {
+        return isBinary() ? BatchFormat.SEQUENCE : configured;
+    }
+
+    /**
+     * Content type of a batch in the given framing.
+     */
+    public String getBatchContentType(BatchFormat format) {
+        return isBinary() ? sequenceContentType : format.getContentType();
+    }
+
+    /**
+     * A mapper writing this encoding, with the serializers of the json one.
+     */
+    public abstract ObjectMapper createMapper();
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.upload;
+
+import com.typesafe.config.Config;
+import org.springframework.http.HttpStatus;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retry with exponentially growing, randomly shortened delays, so that clients failing at the same time do not come
+ * back at the same time either.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class ExponentialBackoffRetryPolicy implements RetryPolicy {
+    private final int maxAttempts;
+    private final long attemptTimeout;
+    private final long initialBackoff;
+    private final long maxBackoff;
+    private final double multiplier;
+    private final double jitter;
+    private final Set<Integer> retryableStatus;
+
+    public ExponentialBackoffRetryPolicy(Config config) {
+        this(config.getInt("max-attempts"), config.getDuration("attempt-timeout", TimeUnit.MILLISECONDS),
+                config.getDuration("initial-backoff", TimeUnit.MILLISECONDS),
+                config.getDuration("max-backoff", TimeUnit.MILLISECONDS), config.getDouble("multiplier"),
+                config.getDouble("jitter"), new HashSet<>(config.getIntList("retryable-status")));
+    }
+
+    /**
+     * @param maxAttempts     maximum number of attempts including the first one
+     * @param attemptTimeout  read timeout of one attempt in milliseconds
+     * @param initialBackoff  delay before the second attempt in milliseconds
+     * @param maxBackoff      upper bound of any delay in milliseconds
+     * @param multiplier      growth of the delay from one attempt to the next
+     * @param jitter          fraction between 0 and 1 by which a delay is randomly shortened
+     * @param retryableStatus http status codes worth another attempt
+     */
+    public ExponentialBackoffRetryPolicy(int maxAttempts, long attemptTimeout, long initialBackoff, long maxBackoff,
+                                         double multiplier, double jitter, Set<Integer> retryableStatus) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("Max attempts must be positive");
+        }
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("Jitter must be between 0 and 1");
+        }
+        this.maxAttempts = maxAttempts;
+        this.attemptTimeout = attemptTimeout;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.multiplier = multiplier;
+        this.jitter = jitter;
+        this.retryableStatus = retryableStatus;
+    }
+
+    @Override
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    @Override
+    public long getAttemptTimeoutMillis() {
+        return attemptTimeout;
+    }
+
+    @Override
+    public long getBackoffMillis(int attempt) {
+        double backoff = Math.min(maxBackoff, initialBackoff * Math.pow(multiplier, attempt - 1));
+        return (long) (backoff * (1 - jitter * ThreadLocalRandom.current().nextDouble()));
+    }
+
+    @Override
+    public boolean isRetryable(HttpStatus status) {
+        return retryableStatus.contains(status.value());
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.upload;
+
+import com.github.yongchristophertang.reporter.metrics.UploadMetrics;
+import com.typesafe.config.Config;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decide when a second copy of a slow attempt is sent. The delay follows a percentile of the attempt latencies
+ * observed so far, so that only the slowest attempts are hedged, and is recomputed at most once a second.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class HedgePolicy {
+    private static final long REFRESH_MILLIS = 1000;
+
+    private final double percentile;
+    private final long minDelayMillis;
+    private final long minSamples;
+    private volatile long delayMillis;
+    private volatile long refreshedAt;
+
+    /**
+     * @param percentile     percentile of attempt latencies after which an attempt is hedged
+     * @param minDelayMillis delay until enough attempts have been timed, and lower bound of the delay
+     * @param minSamples     number of timed attempts from which the percentile is used
+     */
+    public HedgePolicy(double percentile, long minDelayMillis, long minSamples) {
+        if (percentile <= 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be in (0, 100]: " + percentile);
+        }
+        this.percentile = percentile;
+        this.minDelayMillis = minDelayMillis;
+        this.minSamples = minSamples;
+        this.delayMillis = minDelayMillis;
+    }
+
+    /**
+     * @return the policy of the hedge configuration, or null if hedging is disabled
+     */
+    public static HedgePolicy of(Config config) {
+        if (!config.getBoolean("enabled")) {
+            return null;
+        }
+        return new HedgePolicy(config.getDouble("percentile"),
+                config.getDuration("min-delay", TimeUnit.MILLISECONDS), config.getLong("min-samples"));
+    }
+
+    /**
+     * Time in milliseconds after which a running attempt is hedged.
+     */
+    public long getDelayMillis(UploadMetrics metrics) {
+        long now = System.currentTimeMillis();
+        if (now - refreshedAt >= REFRESH_MILLIS) {
+            refreshedAt = now;
+            delayMillis = metrics.getAttempts() < minSamples ? minDelayMillis :
+                    Math.max(minDelayMillis, (long) Math.ceil(metrics.getLatencyMillis(percentile)));
+        }
+        return delayMillis;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.upload;
+
+import com.github.yongchristophertang.reporter.testcase.TestCaseResult;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Keys identifying an upload over all of its attempts, so that storage can tell a retried or hedged attempt from a
+ * new upload. Keys are the run id followed by a hash, which keeps them short and safe to send in a header.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public final class IdempotencyKeys {
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private IdempotencyKeys() {
+    }
+
+    /**
+     * Key of a result, the same for the same invocation whenever results are built with the same run id.
+     *
+     * @param invocation identity of the invocation in TestNG's terms
+     * @param ordinal    number of invocations with the same identity before this one in the run
+     */
+    public static String of(String runId, String invocation, int ordinal) {
+        Hasher hasher = HASH.newHasher();
+        put(hasher, invocation);
+        return runId + ":" + hasher.putInt(ordinal).hash();
+    }
+
+    /**
+     * Key of an upload carrying several results, derived from their keys.
+     */
+    public static String of(String runId, List<TestCaseResult> results) {
+        Hasher hasher = HASH.newHasher();
+        results.forEach(result -> put(hasher, result.getIdempotencyKey()));
+        return runId + ":" + hasher.hash();
+    }
+
+    /**
+     * Key of an upload of other data than results.
+     */
+    public static String of(String runId, String... parts) {
+        Hasher hasher = HASH.newHasher();
+        for (String part : parts) {
+            put(hasher, part);
+        }
+        return runId + ":" + hasher.hash();
+    }
+
+    private static void put(Hasher hasher, String value) {
+        if (value == null) {
+            hasher.putInt(-1);
+        } else {
+            hasher.putInt(value.length()).putString(value, StandardCharsets.UTF_8);
+        }
+    }
+}
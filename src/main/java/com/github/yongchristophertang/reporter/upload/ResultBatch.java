@@ -0,0 +1,65 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.upload;
+
+import com.github.yongchristophertang.reporter.testcase.TestCaseResult;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A group of test case results together with their encoded bulk body.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class ResultBatch {
+    private final List<TestCaseResult> results;
+    private final byte[] body;
+    private final BatchFormat format;
+
+    ResultBatch(List<TestCaseResult> results, byte[] body, BatchFormat format) {
+        this.results = Collections.unmodifiableList(results);
+        this.body = body;
+        this.format = format;
+    }
+
+    public List<TestCaseResult> getResults() {
+        return results;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    public BatchFormat getFormat() {
+        return format;
+    }
+
+    public int size() {
+        return results.size();
+    }
+
+    @Override
+    public String toString() {
+        return "ResultBatch{" +
+                "records=" + results.size() +
+                ", bytes=" + body.length +
+                ", format=" + format +
+                '}';
+    }
+}
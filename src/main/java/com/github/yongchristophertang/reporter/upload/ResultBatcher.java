@@ -0,0 +1,175 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.upload;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.github.yongchristophertang.reporter.testcase.TestCaseResult;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Accumulate test case results and hand them over as {@link ResultBatch}es once the batch is full either in records
+ * or in bytes, or the first record of the batch has lingered longer than the configured time.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class ResultBatcher implements Closeable {
+    private final BatchFormat format;
+    private final int maxRecords;
+    private final long maxBytes;
+    private final long lingerMillis;
+    private final ObjectWriter writer;
+    private final RunEnvelope envelope;
+    private final Consumer<ResultBatch> sink;
+    private final ScheduledExecutorService lingerTimer;
+
+    private List<TestCaseResult> results = new ArrayList<>();
+    private List<byte[]> records = new ArrayList<>();
+    private long bytes;
+    private long generation;
+
+    /**
+     * @param format       framing of the bulk body
+     * @param maxRecords   maximum number of records in one batch
+     * @param maxBytes     maximum size of one bulk body, a single record exceeding it still makes its own batch
+     * @param lingerMillis maximum time a record waits for its batch to fill up, non-positive to wait for flush only
+     * @param mapper       mapper used to encode each result
+     * @param sink         consumer of completed batches, may be called from the linger timer thread
+     */
+    public ResultBatcher(BatchFormat format, int maxRecords, long maxBytes, long lingerMillis, ObjectMapper mapper,
+                         Consumer<ResultBatch> sink) {
+        this(format, maxRecords, maxBytes, lingerMillis, mapper.writerWithType(TestCaseResult.class), null, sink);
+    }
+
+    /**
+     * Batch results into envelopes of the run, where {@code maxBytes} limits the records and not the run header.
+     *
+     * @param envelope envelope of the run, which encodes the records and frames them
+     */
+    public ResultBatcher(RunEnvelope envelope, int maxRecords, long maxBytes, long lingerMillis,
+                         Consumer<ResultBatch> sink) {
+        this(BatchFormat.ENVELOPE, maxRecords, maxBytes, lingerMillis, envelope.getRecordWriter(), envelope, sink);
+    }
+
+    private ResultBatcher(BatchFormat format, int maxRecords, long maxBytes, long lingerMillis, ObjectWriter writer,
+                          RunEnvelope envelope, Consumer<ResultBatch> sink) {
+        if (maxRecords < 1) {
+            throw new IllegalArgumentException("Max records of a batch must be positive");
+        }
+        this.format = format;
+        this.maxRecords = maxRecords;
+        this.maxBytes = maxBytes;
+        this.lingerMillis = lingerMillis;
+        this.writer = writer;
+        this.envelope = envelope;
+        this.sink = sink;
+        this.lingerTimer = lingerMillis > 0 ? Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "report-storage-batch-linger");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    /**
+     * Encode and append a result, emitting the current batch first if the result does not fit into it.
+     */
+    public void add(TestCaseResult result) throws JsonProcessingException {
+        byte[] record = writer.writeValueAsBytes(result);
+        ResultBatch full = null;
+        ResultBatch overflow = null;
+        synchronized (this) {
+            if (!records.isEmpty() && size(records.size() + 1, bytes + record.length) > maxBytes) {
+                full = drain();
+            }
+            if (records.isEmpty() && lingerTimer != null) {
+                long current = generation;
+                lingerTimer.schedule(() -> flush(current), lingerMillis, TimeUnit.MILLISECONDS);
+            }
+            results.add(result);
+            records.add(record);
+            bytes += record.length;
+            if (records.size() >= maxRecords || size(records.size(), bytes) >= maxBytes) {
+                overflow = drain();
+            }
+        }
+        // Hand over outside the lock so that a slow sink never blocks other producers
+        if (full != null) {
+            sink.accept(full);
+        }
+        if (overflow != null) {
+            sink.accept(overflow);
+        }
+    }
+
+    /**
+     * Emit the pending batch regardless of its size.
+     */
+    public void flush() {
+        ResultBatch batch;
+        synchronized (this) {
+            batch = records.isEmpty() ? null : drain();
+        }
+        if (batch != null) {
+            sink.accept(batch);
+        }
+    }
+
+    /**
+     * Flush the pending batch and stop the linger timer.
+     */
+    @Override
+    public void close() {
+        flush();
+        if (lingerTimer != null) {
+            lingerTimer.shutdownNow();
+        }
+    }
+
+    private void flush(long expectedGeneration) {
+        ResultBatch batch;
+        synchronized (this) {
+            batch = generation == expectedGeneration && !records.isEmpty() ? drain() : null;
+        }
+        if (batch != null) {
+            sink.accept(batch);
+        }
+    }
+
+    private long size(int count, long recordBytes) {
+        return recordBytes + format.overhead(count);
+    }
+
+    private ResultBatch drain() {
+        int size = (int) size(records.size(), bytes);
+        ResultBatch batch = new ResultBatch(results, envelope != null ? envelope.frame(results, records, size) :
+                format.frame(records, size), format);
+        results = new ArrayList<>();
+        records = new ArrayList<>();
+        bytes = 0;
+        generation++;
+        return batch;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.upload;
+
+import com.typesafe.config.Config;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+
+/**
+ * Decide whether and when a failed upload is attempted again.
+ * <p>
+ * Implementations are selected by the {@code policy} key of the retry configuration and must provide a public
+ * constructor accepting that {@link Config}.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public interface RetryPolicy {
+
+    /**
+     * Create the policy named by the {@code policy} key of the given retry configuration.
+     */
+    static RetryPolicy of(Config config) {
+        String name = config.getString("policy");
+        try {
+            return (RetryPolicy) Class.forName(name).getConstructor(Config.class).newInstance(config);
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new IllegalArgumentException("Invalid retry policy " + name, e);
+        }
+    }
+
+    /**
+     * Maximum number of attempts of one upload, including the first one.
+     */
+    int getMaxAttempts();
+
+    /**
+     * Time in milliseconds one attempt may wait for the response.
+     */
+    long getAttemptTimeoutMillis();
+
+    /**
+     * Delay in milliseconds before the attempt following the given one.
+     *
+     * @param attempt number of the failed attempt, starting from 1
+     */
+    long getBackoffMillis(int attempt);
+
+    /**
+     * Whether an upload answered with the given status may succeed when attempted again.
+     */
+    boolean isRetryable(HttpStatus status);
+
+    /**
+     * Whether an upload which failed with the given exception may succeed when attempted again. By default I/O
+     * failures are retryable, and error statuses are judged by {@link #isRetryable(HttpStatus)}.
+     */
+    default boolean isRetryable(Throwable failure) {
+        if (failure instanceof HttpStatusCodeException) {
+            return isRetryable(((HttpStatusCodeException) failure).getStatusCode());
+        }
+        return failure instanceof ResourceAccessException;
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.upload;
+
+import com.github.yongchristophertang.reporter.metrics.UploadMetrics;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.http.ResponseEntity;
+
+import java.io.Closeable;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Run uploads on an executor and attempt failed ones again as the {@link RetryPolicy} allows. Attempts are
+ * delayed by a timer rather than by sleeping workers, and are not sent at all while the {@link CircuitBreaker} is
+ * open.
+ * <p>
+ * With a {@link HedgePolicy}, a second copy of an attempt is sent once the attempt takes longer than the policy
+ * allows. Whichever copy succeeds first completes the upload; only once both have failed is the upload attempted
+ * again.
+ * <p>
+ * With a {@link ConcurrencyLimiter}, attempts wait for a permit before they are handed to the executor, and the
+ * outcome of each attempt is fed back to the limiter.
+ * <p>
+ * Only the thread submitting an upload waits for room in a full executor. Retries, hedges and attempts granted a
+ * permit later are offered to the executor instead, and offered again after a pause while it is full, so that the
+ * timer never stalls on it.
+ * <p>
+ * An {@link AsyncUpload} is sent without a worker, which then only handles its answer, so that a few workers keep
+ * any number of such uploads in flight.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class RetryingUploader implements Closeable {
+    private static final Logger logger = LogManager.getLogger();
+    private static final CompletableFuture<Void> GRANTED = CompletableFuture.completedFuture(null);
+    private static final long REOFFER_MILLIS = 10;
+
+    private final ExecutorService executor;
+    private final RetryPolicy policy;
+    private final CircuitBreaker breaker;
+    private final UploadMetrics metrics;
+    private final HedgePolicy hedge;
+    private final ConcurrencyLimiter limiter;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "report-storage-retry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public RetryingUploader(ExecutorService executor, RetryPolicy policy, CircuitBreaker breaker) {
+        this(executor, policy, breaker, new UploadMetrics());
+    }
+
+    public RetryingUploader(ExecutorService executor, RetryPolicy policy, CircuitBreaker breaker,
+                            UploadMetrics metrics) {
+        this(executor, policy, breaker, metrics, null);
+    }
+
+    /**
+     * @param hedge policy hedging slow attempts, or null to never hedge
+     */
+    public RetryingUploader(ExecutorService executor, RetryPolicy policy, CircuitBreaker breaker,
+                            UploadMetrics metrics, HedgePolicy hedge) {
+        this(executor, policy, breaker, metrics, hedge, null);
+    }
+
+    /**
+     * @param hedge   policy hedging slow attempts, or null to never hedge
+     * @param limiter limiter of the attempts in flight, or null to hand attempts to the executor at once
+     */
+    public RetryingUploader(ExecutorService executor, RetryPolicy policy, CircuitBreaker breaker,
+                            UploadMetrics metrics, HedgePolicy hedge, ConcurrencyLimiter limiter) {
+        this.executor = executor;
+        this.policy = policy;
+        this.breaker = breaker;
+        this.metrics = metrics;
+        this.hedge = hedge;
+        this.limiter = limiter;
+        if (limiter != null) {
+            metrics.onLimit(limiter.getLimit());
+        }
+    }
+
+    /**
+     * Start an upload.
+     *
+     * @return completes with true once an attempt succeeds, or with false once no more attempts are allowed
+     */
+    public CompletableFuture<Boolean> submit(Callable<ResponseEntity<String>> upload) {
+        CompletableFuture<Boolean> done = new CompletableFuture<>();
+        attempt(upload, 1, done, true);
+        return done.whenComplete((success, t) -> metrics.onCompleted(Boolean.TRUE.equals(success)));
+    }
+
+    /**
+     * Stop the retry timer. Uploads waiting for their next attempt will never complete.
+     */
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+
+    /**
+     * @param submitting whether this is the first attempt, made by the thread submitting the upload
+     */
+    private void attempt(Callable<ResponseEntity<String>> upload, int attempt, CompletableFuture<Boolean> done,
+                         boolean submitting) {
+        if (!breaker.allowRequest()) {
+            done.complete(false);
+            return;
+        }
+        AtomicInteger copies = new AtomicInteger(1);
+        execute(upload, attempt, copies, done, false, submitting);
+        if (hedge != null) {
+            try {
+                timer.schedule(() -> hedge(upload, attempt, copies, done), hedge.getDelayMillis(metrics),
+                        TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // closed, the attempt is simply not hedged
+            }
+        }
+    }
+
+    /**
+     * Send a second copy of an attempt, unless the attempt has finished meanwhile.
+     */
+    private void hedge(Callable<ResponseEntity<String>> upload, int attempt, AtomicInteger copies,
+                       CompletableFuture<Boolean> done) {
+        if (done.isDone() || !breaker.allowRequest() || !copies.compareAndSet(1, 2)) {
+            return;
+        }
+        metrics.onHedged();
+        logger.debug("Attempt {} to upload results to remote storage is slow, sending a second copy", attempt);
+        execute(upload, attempt, copies, done, true, false);
+    }
+
+    /**
+     * Hand a copy of an attempt to the executor once the limiter, if any, allows. Uploads sent without blocking are
+     * sent right away instead, and only their answers are handled on the executor.
+     *
+     * @param retryable  whether the upload may be attempted again if the copy is refused
+     * @param submitting whether the copy is made by the thread submitting the upload
+     */
+    private void execute(Callable<ResponseEntity<String>> upload, int attempt, AtomicInteger copies,
+                         CompletableFuture<Boolean> done, boolean retryable, boolean submitting) {
+        metrics.onQueued();
+        CompletableFuture<Void> permit = limiter == null ? GRANTED : limiter.acquire(timer);
+        boolean mayWait = submitting && permit.isDone();
+        permit.whenComplete((v, t) -> {
+            if (t != null) {
+                metrics.onRejected();
+                settle(upload, attempt, copies, done, retryable);
+            } else if (upload instanceof AsyncUpload) {
+                run(upload, attempt, copies, done);
+            } else {
+                dispatch(() -> run(upload, attempt, copies, done), mayWait, () -> {
+                    if (limiter != null) {
+                        limiter.cancel();
+                    }
+                    settle(upload, attempt, copies, done, retryable);
+                });
+            }
+        });
+    }
+
+    /**
+     * Hand a task to the executor, waiting for room if need be, or else offering it until there is room.
+     *
+     * @param mayWait whether the calling thread may wait for room, rather than being a timer or worker
+     * @param refused run once the executor has refused the task
+     */
+    private void dispatch(Runnable task, boolean mayWait, Runnable refused) {
+        try {
+            if (mayWait) {
+                executor.execute(task);
+            } else if (!UploadExecutors.offer(executor, task)) {
+                timer.schedule(() -> dispatch(task, false, refused), REOFFER_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        } catch (RejectedExecutionException e) {
+            metrics.onRejected();
+            logger.error("Upload executor refused to run an upload", e);
+            refused.run();
+        }
+    }
+
+    private void run(Callable<ResponseEntity<String>> upload, int attempt, AtomicInteger copies,
+                     CompletableFuture<Boolean> done) {
+        if (done.isDone()) {
+            // The other copy has already succeeded, this one leaves the queue unsent
+            metrics.onRejected();
+            copies.decrementAndGet();
+            if (limiter != null) {
+                limiter.cancel();
+            }
+            return;
+        }
+        metrics.onStarted();
+        long start = System.nanoTime();
+        if (upload instanceof AsyncUpload) {
+            send((AsyncUpload) upload).whenComplete((response, t) ->
+                    handle(() -> finish(upload, attempt, copies, done, start, response, t)));
+            return;
+        }
+        try {
+            finish(upload, attempt, copies, done, start, upload.call(), null);
+        } catch (Exception e) {
+            finish(upload, attempt, copies, done, start, null, e);
+        }
+    }
+
+    private CompletableFuture<ResponseEntity<String>> send(AsyncUpload upload) {
+        try {
+            return upload.send();
+        } catch (RuntimeException e) {
+            CompletableFuture<ResponseEntity<String>> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    /**
+     * Handle the answer to a copy sent without blocking on the executor, rather than on the I/O thread receiving it.
+     * The I/O thread never waits for room though, it handles the answer itself while the executor is full.
+     */
+    private void handle(Runnable task) {
+        try {
+            if (UploadExecutors.offer(executor, task)) {
+                return;
+            }
+        } catch (RejectedExecutionException e) {
+            // shut down, the answer is still accounted for
+        }
+        task.run();
+    }
+
+    /**
+     * Account for the answer to a copy of an attempt, and complete or settle the upload accordingly.
+     *
+     * @param response answer of the storage, or null if the copy failed
+     * @param failure  failure of the copy, or null if the storage has answered
+     */
+    private void finish(Callable<ResponseEntity<String>> upload, int attempt, AtomicInteger copies,
+                        CompletableFuture<Boolean> done, long start, ResponseEntity<String> response,
+                        Throwable failure) {
+        metrics.onAttempted(System.nanoTime() - start);
+        boolean retryable;
+        if (failure == null) {
+            if (response.getStatusCode().is2xxSuccessful()) {
+                release(start, false);
+                breaker.onSuccess();
+                copies.decrementAndGet();
+                done.complete(true);
+                return;
+            }
+            retryable = policy.isRetryable(response.getStatusCode());
+            logger.error("Attempt {} to upload results to remote storage responds {}", attempt,
+                    response.getStatusCode());
+        } else {
+            Throwable cause = failure instanceof CompletionException && failure.getCause() != null ?
+                    failure.getCause() : failure;
+            retryable = policy.isRetryable(cause);
+            logger.error("Attempt {} failed to upload results to remote storage.", attempt, cause);
+        }
+        release(start, retryable);
+
+        if (retryable) {
+            breaker.onFailure();
+        } else {
+            // The endpoint has answered, it is the upload which cannot succeed
+            breaker.onSuccess();
+        }
+        settle(upload, attempt, copies, done, retryable);
+    }
+
+    /**
+     * Give the permit of a finished copy back to the limiter, telling it how the copy fared.
+     */
+    private void release(long start, boolean overloaded) {
+        if (limiter != null) {
+            limiter.release(System.nanoTime() - start, overloaded);
+            metrics.onLimit(limiter.getLimit());
+        }
+    }
+
+    /**
+     * Once the last copy of an attempt has failed, attempt the upload again if allowed, or give it up.
+     */
+    private void settle(Callable<ResponseEntity<String>> upload, int attempt, AtomicInteger copies,
+                        CompletableFuture<Boolean> done, boolean retryable) {
+        if (copies.decrementAndGet() > 0 || done.isDone()) {
+            return;
+        }
+        if (retryable && attempt < policy.getMaxAttempts()) {
+            metrics.onRetry();
+            try {
+                timer.schedule(() -> attempt(upload, attempt + 1, done, false), policy.getBackoffMillis(attempt),
+                        TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                done.complete(false);
+            }
+        } else {
+            done.complete(false);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.upload;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.introspect.Annotated;
+import com.fasterxml.jackson.databind.introspect.JacksonAnnotationIntrospector;
+import com.github.yongchristophertang.reporter.testcase.StringDictionary;
+import com.github.yongchristophertang.reporter.testcase.TestCaseResult;
+import com.github.yongchristophertang.reporter.testcase.TestCaseResultSerializer;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Json bulk body sending run-level values once, followed by records referring to suite, test and class names by
+ * their ids in the run's {@link StringDictionary}:
+ * <pre>
+ * {"run":{"version":"1.0","dictionary":{"0":"suite","1":"test","2":"a.b.C"}},
+ *  "results":[{"suiteId":0,"testId":1,"classId":2,"caseName":"testMethod",...},...]}
+ * </pre>
+ * Ids are stable for the whole run, and every envelope carries the dictionary entries its records refer to, so
+ * envelopes can be read on their own and in any order.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class RunEnvelope {
+    private static final byte[] RESULTS = ",\"results\":[".getBytes(StandardCharsets.UTF_8);
+
+    private final ObjectMapper mapper;
+    private final ObjectWriter recordWriter;
+    private final StringDictionary dictionary;
+    private final String version;
+
+    public RunEnvelope(StringDictionary dictionary, String version) {
+        TestCaseResultSerializer serializer = new TestCaseResultSerializer(dictionary);
+        this.mapper = new ObjectMapper().setAnnotationIntrospector(new JacksonAnnotationIntrospector() {
+            @Override
+            public Object findSerializer(Annotated a) {
+                return a.getRawType() == TestCaseResult.class ? serializer : super.findSerializer(a);
+            }
+        });
+        this.recordWriter = mapper.writerWithType(TestCaseResult.class);
+        this.dictionary = dictionary;
+        this.version = version;
+    }
+
+    /**
+     * Writer of single records, which refer to names by id.
+     */
+    ObjectWriter getRecordWriter() {
+        return recordWriter;
+    }
+
+    /**
+     * Prefix the encoded records with the run header and the dictionary entries of their results.
+     */
+    byte[] frame(List<TestCaseResult> results, List<byte[]> records, int size) {
+        Map<String, String> entries = new LinkedHashMap<>();
+        Map<Integer, String> referred = new TreeMap<>();
+        for (TestCaseResult result : results) {
+            refer(referred, result.getSuiteName());
+            refer(referred, result.getTestName());
+            refer(referred, result.getClassName());
+        }
+        referred.forEach((id, value) -> entries.put(String.valueOf(id), value));
+        Map<String, Object> run = new LinkedHashMap<>();
+        run.put("version", version);
+        run.put("dictionary", entries);
+
+        byte[] header;
+        try {
+            header = mapper.writeValueAsBytes(Collections.singletonMap("run", run));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Run header cannot be encoded", e);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(header.length + RESULTS.length + size);
+        // reopen the header object to append the results to it
+        out.write(header, 0, header.length - 1);
+        out.write(RESULTS, 0, RESULTS.length);
+        for (int i = 0; i < records.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            byte[] record = records.get(i);
+            out.write(record, 0, record.length);
+        }
+        out.write(']');
+        out.write('}');
+        return out.toByteArray();
+    }
+
+    private void refer(Map<Integer, String> referred, String value) {
+        if (value != null) {
+            referred.put(dictionary.id(value), value);
+        }
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.upload;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Factory of bounded executors running uploads, which apply backpressure to the submitter instead of spawning a
+ * thread or queueing a task for every result.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public final class UploadExecutors {
+    private static final Logger logger = LogManager.getLogger();
+    private static final ThreadLocal<Boolean> offering = new ThreadLocal<>();
+
+    private UploadExecutors() {
+    }
+
+    /**
+     * Threads running the uploads.
+     */
+    public enum Type {
+        /**
+         * A fixed pool of platform threads.
+         */
+        PLATFORM,
+        /**
+         * One virtual thread per upload, available on JDK 21 or above. Falls back to {@link #PLATFORM} otherwise.
+         */
+        VIRTUAL;
+
+        public static Type of(String name) {
+            return valueOf(name.trim().replace('-', '_').toUpperCase());
+        }
+    }
+
+    /**
+     * What a submitter experiences when all workers are busy and the queue is full.
+     */
+    public enum Backpressure {
+        /**
+         * The submitter blocks until there is room for its task.
+         */
+        BLOCK,
+        /**
+         * The submitter runs the task itself.
+         */
+        CALLER_RUNS;
+
+        public static Backpressure of(String name) {
+            return valueOf(name.trim().replace('-', '_').toUpperCase());
+        }
+    }
+
+    /**
+     * @param type         threads running the uploads
+     * @param threads      number of platform threads, or concurrent uploads in virtual mode
+     * @param queueSize    number of uploads waiting for a thread
+     * @param backpressure policy applied once threads and queue are exhausted
+     */
+    public static ExecutorService create(Type type, int threads, int queueSize, Backpressure backpressure) {
+        if (type == Type.VIRTUAL) {
+            ExecutorService virtual = newVirtualThreadPerTaskExecutor();
+            if (virtual != null) {
+                return new PermitExecutor(virtual, threads + queueSize, backpressure);
+            }
+            logger.warn("Virtual threads are not supported by this JVM, fall back to platform threads");
+        }
+        AtomicInteger count = new AtomicInteger();
+        RejectedExecutionHandler policy = backpressure == Backpressure.BLOCK ? new BlockingPolicy() :
+                new CallerRunsPolicy();
+        return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueSize),
+                r -> {
+                    Thread thread = new Thread(r, "report-storage-upload-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, policy);
+    }
+
+    /**
+     * Hand a task to an executor only if it has room for it, whatever its backpressure, so that threads which must
+     * neither wait nor run uploads themselves, such as timers, can try again later.
+     *
+     * @return whether the executor has taken the task
+     * @throws RejectedExecutionException if the executor refuses the task for another reason, e.g. it is shut down
+     */
+    public static boolean offer(Executor executor, Runnable task) {
+        offering.set(true);
+        try {
+            executor.execute(task);
+            return true;
+        } catch (FullException e) {
+            return false;
+        } finally {
+            offering.remove();
+        }
+    }
+
+    private static boolean isOffering() {
+        return offering.get() != null;
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Put the rejected task into the queue, waiting for space to become available.
+     */
+    private static class BlockingPolicy implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("Upload executor has been shut down");
+            }
+            if (isOffering()) {
+                throw new FullException();
+            }
+            try {
+                executor.getQueue().put(r);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting for upload queue", e);
+            }
+        }
+    }
+
+    /**
+     * Run the rejected task on the submitting thread, unless it is only offered.
+     */
+    private static class CallerRunsPolicy extends ThreadPoolExecutor.CallerRunsPolicy {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            if (isOffering()) {
+                throw executor.isShutdown() ? new RejectedExecutionException("Upload executor has been shut down") :
+                        new FullException();
+            }
+            super.rejectedExecution(r, executor);
+        }
+    }
+
+    /**
+     * An executor has no room for an offered task.
+     */
+    private static class FullException extends RejectedExecutionException {
+        FullException() {
+            super("Upload executor is full");
+        }
+    }
+
+    /**
+     * Limit the number of tasks submitted to an otherwise unbounded executor.
+     */
+    private static class PermitExecutor extends AbstractExecutorService {
+        private final ExecutorService delegate;
+        private final Semaphore permits;
+        private final Backpressure backpressure;
+
+        PermitExecutor(ExecutorService delegate, int permits, Backpressure backpressure) {
+            this.delegate = delegate;
+            this.permits = new Semaphore(permits);
+            this.backpressure = backpressure;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            if (!permits.tryAcquire()) {
+                if (isOffering()) {
+                    throw new FullException();
+                }
+                if (backpressure == Backpressure.CALLER_RUNS) {
+                    command.run();
+                    return;
+                }
+                try {
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RejectedExecutionException("Interrupted while waiting for upload permit", e);
+                }
+            }
+            try {
+                delegate.execute(() -> {
+                    try {
+                        command.run();
+                    } finally {
+                        permits.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                permits.release();
+                throw e;
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.upload;
+
+import com.github.yongchristophertang.reporter.testcase.TestCaseResult;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.http.ResponseEntity;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Keep track of the uploads of a reporter from submission to completion. Results of uploads which fail, or which
+ * are still pending when a drain runs out of time, are handed to a fallback such as the local spool rather than
+ * dropped. Draining does not stop the executor, so that more uploads can follow until the lifecycle is closed.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class UploadLifecycle implements Closeable {
+    private static final Logger logger = LogManager.getLogger();
+
+    private final ExecutorService executor;
+    private final RetryingUploader uploader;
+    private final Consumer<List<TestCaseResult>> fallback;
+    private final long progressMillis;
+    private final ExecutorService followUps = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "report-storage-follow-up");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Set<Tracked> pending = ConcurrentHashMap.newKeySet();
+    private final LongAdder failedUploads = new LongAdder();
+    private final LongAdder failedResults = new LongAdder();
+    private final LongAdder abandonedResults = new LongAdder();
+
+    /**
+     * @param executor       executor running the uploads, shut down on close
+     * @param uploader       uploader attempting the uploads on the executor
+     * @param fallback       receiver of the results which could not be uploaded
+     * @param progressMillis interval of progress logs while draining
+     */
+    public UploadLifecycle(ExecutorService executor, RetryingUploader uploader,
+                           Consumer<List<TestCaseResult>> fallback, long progressMillis) {
+        this.executor = executor;
+        this.uploader = uploader;
+        this.fallback = fallback;
+        this.progressMillis = progressMillis;
+    }
+
+    /**
+     * Start an upload carrying the given results, which may be empty for uploads of other data.
+     *
+     * @return completes with whether the upload succeeded, after a failed upload's results have been handed over
+     */
+    public CompletableFuture<Boolean> submit(Callable<ResponseEntity<String>> upload, List<TestCaseResult> results) {
+        return track(results, () -> uploader.submit(upload));
+    }
+
+    /**
+     * Start an upload of other data once a previous upload has succeeded, e.g. of files following their result.
+     * Should the previous upload fail, this one fails without being attempted. It is submitted from a thread of its
+     * own rather than from the upload worker completing the previous upload, which would otherwise wait for room in
+     * its own queue.
+     *
+     * @return completes with whether the upload succeeded
+     */
+    public CompletableFuture<Boolean> submitAfter(CompletableFuture<Boolean> previous,
+                                                  Callable<ResponseEntity<String>> upload) {
+        return track(Collections.emptyList(), () -> previous.thenComposeAsync(succeeded ->
+                succeeded ? uploader.submit(upload) : CompletableFuture.completedFuture(false), followUps));
+    }
+
+    /**
+     * Track an upload from the moment it is started. An upload which cannot even be started, e.g. because the
+     * executor refuses it, fails at once and its results are handed over.
+     */
+    private CompletableFuture<Boolean> track(List<TestCaseResult> results, Supplier<CompletableFuture<Boolean>> start) {
+        Tracked tracked = new Tracked(results);
+        pending.add(tracked);
+        CompletableFuture<Boolean> started;
+        try {
+            started = start.get();
+        } catch (RuntimeException e) {
+            logger.error("Failed to start an upload to remote storage", e);
+            started = CompletableFuture.completedFuture(false);
+        }
+        started.handle((success, t) -> {
+            boolean succeeded = Boolean.TRUE.equals(success);
+            if (!succeeded && tracked.claim()) {
+                failedUploads.increment();
+                failedResults.add(results.size());
+                handOver(results);
+            }
+            pending.remove(tracked);
+            return tracked.settled.complete(succeeded);
+        });
+        return tracked.settled;
+    }
+
+    /**
+     * Wait for pending uploads until the deadline, logging progress meanwhile. Results of uploads still pending at
+     * the deadline are handed to the fallback; should such an upload complete later, its result is ignored.
+     *
+     * @return number of results handed over because their uploads did not complete in time
+     */
+    public long drain(long deadlineMillis) {
+        long deadline = System.currentTimeMillis() + deadlineMillis;
+        for (long left = deadlineMillis; !pending.isEmpty() && left > 0;
+             left = deadline - System.currentTimeMillis()) {
+            CompletableFuture<?>[] settled = pending.stream().map(t -> t.settled)
+                    .toArray(CompletableFuture<?>[]::new);
+            try {
+                CompletableFuture.allOf(settled).get(Math.min(left, progressMillis), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                logger.info("Waiting for {} uploads to remote storage, {} ms left", pending.size(),
+                        deadline - System.currentTimeMillis());
+            } catch (ExecutionException e) {
+                // uploads never complete exceptionally once settled
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.error("Interrupted while waiting for uploads to remote storage", e);
+                break;
+            }
+        }
+
+        long abandoned = 0;
+        for (Tracked tracked : pending) {
+            if (tracked.claim()) {
+                abandoned += tracked.results.size();
+                handOver(tracked.results);
+            }
+            pending.remove(tracked);
+        }
+        if (abandoned > 0) {
+            abandonedResults.add(abandoned);
+            logger.error("{} test case results have not been uploaded within {} ms", abandoned, deadlineMillis);
+        }
+        return abandoned;
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    public long getFailedUploads() {
+        return failedUploads.sum();
+    }
+
+    /**
+     * @return results of failed uploads, not counting those abandoned by a drain
+     */
+    public long getFailedResults() {
+        return failedResults.sum();
+    }
+
+    public long getAbandonedResults() {
+        return abandonedResults.sum();
+    }
+
+    /**
+     * Stop the uploader and the executor. Uploads still running are interrupted, so drain first.
+     */
+    @Override
+    public void close() {
+        followUps.shutdownNow();
+        uploader.close();
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+        }
+    }
+
+    private void handOver(List<TestCaseResult> results) {
+        if (!results.isEmpty()) {
+            try {
+                fallback.accept(results);
+            } catch (RuntimeException e) {
+                logger.error("Failed to hand over {} test case results which could not be uploaded", results.size(),
+                        e);
+            }
+        }
+    }
+
+    /**
+     * An upload which is either settled by its completion or abandoned by a drain, whichever comes first.
+     */
+    private static final class Tracked {
+        private final List<TestCaseResult> results;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private final CompletableFuture<Boolean> settled = new CompletableFuture<>();
+
+        private Tracked(List<TestCaseResult> results) {
+            this.results = results;
+        }
+
+        private boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+    }
+}
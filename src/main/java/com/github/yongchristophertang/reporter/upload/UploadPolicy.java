@@ -0,0 +1,127 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.upload;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.typesafe.config.Config;
+import org.testng.ITestResult;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decide how much of a test case result is uploaded, depending on its status and on whether it comes from a
+ * configuration method. Failures usually deserve the full record, while passes can do with far less.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class UploadPolicy {
+    private static final HashFunction HASH = Hashing.murmur3_32();
+    private static final int SAMPLE_BUCKETS = 10000;
+
+    private final Detail success;
+    private final Detail failure;
+    private final Detail skip;
+    private final Detail successPercentageFailure;
+    private final Detail configuration;
+    private final int sampledBuckets;
+
+    /**
+     * @param success                  detail of passed results
+     * @param failure                  detail of failed results
+     * @param skip                     detail of skipped results
+     * @param successPercentageFailure detail of failures within the success percentage
+     * @param configuration            detail of passed configuration methods, failed or skipped ones follow their
+     *                                 status
+     * @param sampleRate               fraction of results whose outputs are kept in {@link Detail#SAMPLED} detail
+     */
+    public UploadPolicy(Detail success, Detail failure, Detail skip, Detail successPercentageFailure,
+                        Detail configuration, double sampleRate) {
+        if (sampleRate < 0 || sampleRate > 1) {
+            throw new IllegalArgumentException("Sample rate must be between 0 and 1: " + sampleRate);
+        }
+        this.success = success;
+        this.failure = failure;
+        this.skip = skip;
+        this.successPercentageFailure = successPercentageFailure;
+        this.configuration = configuration;
+        this.sampledBuckets = (int) Math.round(sampleRate * SAMPLE_BUCKETS);
+    }
+
+    public static UploadPolicy of(Config config) {
+        return new UploadPolicy(Detail.of(config.getString("success")), Detail.of(config.getString("failure")),
+                Detail.of(config.getString("skip")), Detail.of(config.getString("success-percentage-failure")),
+                Detail.of(config.getString("configuration")), config.getDouble("sample-rate"));
+    }
+
+    /**
+     * @param status        status of the result as in {@link ITestResult#getStatus()}
+     * @param configuration whether the result comes from a configuration method
+     */
+    public Detail detailOf(int status, boolean configuration) {
+        switch (status) {
+            case ITestResult.SUCCESS:
+                return configuration ? this.configuration : success;
+            case ITestResult.FAILURE:
+                return failure;
+            case ITestResult.SKIP:
+                return skip;
+            case ITestResult.SUCCESS_PERCENTAGE_FAILURE:
+                return successPercentageFailure;
+            default:
+                return Detail.FULL;
+        }
+    }
+
+    /**
+     * Whether outputs are kept for a result in {@link Detail#SAMPLED} detail. The same cases are sampled in every
+     * run, so that their outputs can be compared from run to run.
+     */
+    public boolean isSampled(String suiteName, String className, String caseName) {
+        if (sampledBuckets >= SAMPLE_BUCKETS) {
+            return true;
+        }
+        int hash = HASH.newHasher().putString(String.valueOf(suiteName), StandardCharsets.UTF_8)
+                .putString(String.valueOf(className), StandardCharsets.UTF_8)
+                .putString(String.valueOf(caseName), StandardCharsets.UTF_8).hash().asInt();
+        return (hash & Integer.MAX_VALUE) % SAMPLE_BUCKETS < sampledBuckets;
+    }
+
+    public enum Detail {
+        /**
+         * Everything about the result, including outputs, case description and expected result.
+         */
+        FULL,
+        /**
+         * Full records, but outputs are only kept for a sample of the results.
+         */
+        SAMPLED,
+        /**
+         * Only suite, test, class and case names, duration and status.
+         */
+        SLIM,
+        /**
+         * The result is not uploaded at all.
+         */
+        DROP;
+
+        public static Detail of(String name) {
+            return valueOf(name.trim().replace('-', '_').toUpperCase());
+        }
+    }
+}
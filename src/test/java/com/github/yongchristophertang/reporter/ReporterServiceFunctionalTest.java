@@ -1,74 +1,402 @@
 package com.github.yongchristophertang.reporter;
 
+import com.github.yongchristophertang.reporter.attachment.Attachment;
+import com.github.yongchristophertang.reporter.spool.ResultSpool;
+import com.github.yongchristophertang.reporter.standin.Latency;
+import com.github.yongchristophertang.reporter.standin.ReceivedUpload;
+import com.github.yongchristophertang.reporter.standin.StandInStorage;
+import com.typesafe.config.ConfigFactory;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.testng.annotations.BeforeClass;
-import org.testng.annotations.Listeners;
+import org.testng.IInvokedMethod;
+import org.testng.ISuite;
+import org.testng.ITestClass;
+import org.testng.ITestNGMethod;
+import org.testng.ITestResult;
+import org.testng.annotations.AfterMethod;
 import org.testng.annotations.Test;
+import org.springframework.web.client.RestTemplate;
+import org.testng.internal.ConstructorOrMethod;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
 
 /**
- * Tests for {@link ReporterService}'s main functions.
+ * Tests for {@link ReporterService}'s main functions, uploading to a local {@link StandInStorage}. The number of
+ * cases of the load test can be raised with {@code -Dstandin.cases=100000}.
  *
  * @author Yong Tang
  * @since 0.1
  */
-@Listeners(ReporterService.class)
 public class ReporterServiceFunctionalTest {
     private static final Logger logger = LogManager.getLogger();
+    private final Properties properties = new Properties();
+
+    @AfterMethod
+    public void tearDown() {
+        properties.stringPropertyNames().forEach(System::clearProperty);
+        properties.clear();
+        ConfigFactory.invalidateCaches();
+    }
+
+    @Test
+    public void testResultsUploadedOneByOne() throws IOException {
+        try (StandInStorage storage = new StandInStorage.Builder().start()) {
+            report(storage, 50);
+            List<ReceivedUpload> received = storage.getReceived();
+            assertThat("Uploads", received.size(), is(50));
+            assertThat("Results", storage.getResultCount(), is(50L));
+            assertThat("Path", received.get(0).getPath(), is("/api"));
+        }
+    }
+
+    @Test
+    public void testResultsUploadedInBatches() throws IOException {
+        configure("report.storage.batch.enabled", "true");
+        configure("report.storage.batch.format", "ndjson");
+        configure("report.storage.batch.max-records", "20");
+        try (StandInStorage storage = new StandInStorage.Builder().start()) {
+            report(storage, 50);
+            List<ReceivedUpload> received = storage.getReceived();
+            assertThat("Batches", received.size(), is(3));
+            assertThat("Results", storage.getResultCount(), is(50L));
+            assertThat("Path", received.get(0).getPath(), is("/api/results/bulk"));
+        }
+    }
+
+    @Test
+    public void testResultsUploadedInEnvelopes() throws IOException {
+        configure("report.storage.batch.enabled", "true");
+        configure("report.storage.batch.format", "envelope");
+        try (StandInStorage storage = new StandInStorage.Builder().start()) {
+            report(storage, 50);
+            assertThat("Envelopes", storage.getUploadCount(), is(1L));
+            assertThat("Results", storage.getResultCount(), is(50L));
+        }
+    }
+
+    @Test
+    public void testBinaryEncodings() throws IOException {
+        configure("report.storage.encoding", "smile");
+        try (StandInStorage storage = new StandInStorage.Builder().start()) {
+            report(storage, 10);
+            assertThat("Smile results", storage.getResultCount(), is(10L));
+            assertThat("Content type", storage.getReceived().get(0).getContentType(),
+                    is("application/x-jackson-smile"));
+        }
+
+        configure("report.storage.encoding", "cbor");
+        configure("report.storage.batch.enabled", "true");
+        try (StandInStorage storage = new StandInStorage.Builder().start()) {
+            report(storage, 10);
+            assertThat("Cbor batches", storage.getUploadCount(), is(1L));
+            assertThat("Cbor results", storage.getResultCount(), is(10L));
+            assertThat("Content type", storage.getReceived().get(0).getContentType(), is("application/cbor-seq"));
+        }
+    }
+
+    @Test
+    public void testUnchangedResultsListedInDeltaMode() throws IOException {
+        Path index = Files.createTempDirectory("report-storage-index").resolve("results.index");
+        configure("report.storage.delta.enabled", "true");
+        configure("report.storage.delta.index-file", index.toString());
+        try (StandInStorage storage = new StandInStorage.Builder().start()) {
+            report(storage, 20);
+            assertThat("Results of first run", storage.getResultCount(), is(20L));
+            assertThat("Index written", Files.exists(index), is(true));
+
+            report(storage, 20);
+            List<ReceivedUpload> received = storage.getReceived();
+            assertThat("Uploads of both runs", received.size(), is(21));
+            assertThat("Path", received.get(20).getPath(), is("/api/results/unchanged"));
+            assertThat("Same as first run", received.get(20).getBody().contains("\"sameAs\":\""), is(true));
+            assertThat("Results uploaded in full", received.stream().filter(u -> u.getPath().equals("/api")).count(),
+                    is(20L));
+        }
+    }
+
+    @Test
+    public void testForksAggregatedByCollector() throws IOException {
+        Path directory = Files.createTempDirectory("report-storage-aggregation");
+        configure("report.storage.aggregation.enabled", "true");
+        configure("report.storage.aggregation.directory", directory.toString());
+        try (StandInStorage storage = new StandInStorage.Builder().start()) {
+            report(storage, 20);
+            report(storage, 30);
+            assertThat("Uploads by forks", storage.getRequestCount(), is(0L));
+
+            Path segment;
+            try (Stream<Path> segments = Files.list(directory)) {
+                segment = segments.max(Comparator.comparingLong(path -> path.toFile().length())).get();
+            }
+            byte[] handedOver = Files.readAllBytes(segment);
+            Files.write(directory.resolve("copy-" + segment.getFileName()), handedOver);
+            ResultCollector collector = new ResultCollector();
+            collector.collectOnce();
+            assertThat("Results", storage.getResultCount(), is(50L));
+            assertThat("Duplicates", collector.getDuplicates(), is(30L));
+            assertThat("Batches", storage.getUploadCount(), is(2L));
+
+            Files.write(directory.resolve("again-" + segment.getFileName()), handedOver);
+            ResultCollector restarted = new ResultCollector();
+            restarted.collectOnce();
+            assertThat("Duplicates after restart", restarted.getDuplicates(), is(30L));
+            assertThat("Results after restart", storage.getResultCount(), is(50L));
+        }
+    }
+
+    @Test
+    public void testHandedOverResultsKeptUntilUploaded() throws IOException {
+        Path directory = Files.createTempDirectory("report-storage-aggregation");
+        configure("report.storage.aggregation.enabled", "true");
+        configure("report.storage.aggregation.directory", directory.toString());
+        try (StandInStorage failing = new StandInStorage.Builder().errors(1.0, 400).start()) {
+            report(failing, 20);
+            new ResultCollector().collectOnce();
+            assertThat("Results accepted", failing.getResultCount(), is(0L));
+        }
+        try (StandInStorage storage = new StandInStorage.Builder().start()) {
+            configure("report.storage.port", String.valueOf(storage.getPort()));
+            ConfigFactory.invalidateCaches();
+            ResultCollector collector = new ResultCollector();
+            collector.collectOnce();
+            assertThat("Results collected again", collector.getCollected(), is(20L));
+            assertThat("Results", storage.getResultCount(), is(20L));
+        }
+    }
+
+    @Test
+    public void testResultsStreamedWithoutWaitingForUploads() throws IOException, InterruptedException {
+        configure("report.storage.streaming.workers", "1");
+        try (StandInStorage storage = new StandInStorage.Builder().latency(Latency.fixed(300)).start()) {
+            try (StreamingReporterService reporter = streamingReporter(storage)) {
+                stream(reporter, 8);
+                long deadline = System.currentTimeMillis() + 1500;
+                while (storage.getResultCount() < 8 && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(10);
+                }
+                assertThat("Results uploaded concurrently during the run", storage.getResultCount(), is(8L));
+                reporter.generateReport(Collections.emptyList(), Collections.emptyList(), null);
+            }
+            assertThat("Results", storage.getResultCount(), is(8L));
+        }
+    }
+
+    @Test
+    public void testStreamedResultsFlushedAtEndOfEachRun() throws IOException {
+        configure("report.storage.batch.enabled", "true");
+        configure("report.storage.batch.max-linger", "1h");
+        try (StandInStorage storage = new StandInStorage.Builder().start()) {
+            try (StreamingReporterService reporter = streamingReporter(storage)) {
+                stream(reporter, 30);
+                reporter.generateReport(Collections.emptyList(), Collections.emptyList(), null);
+                assertThat("Results of first run", storage.getResultCount(), is(30L));
+
+                stream(reporter, 10);
+                reporter.generateReport(Collections.emptyList(), Collections.emptyList(), null);
+                assertThat("Results of second run", storage.getResultCount(), is(40L));
+            }
+        }
+    }
+
+    @Test
+    public void testUnchangedStreamedResultsListedInDeltaMode() throws IOException {
+        Path index = Files.createTempDirectory("report-storage-index").resolve("results.index");
+        configure("report.storage.delta.enabled", "true");
+        configure("report.storage.delta.index-file", index.toString());
+        try (StandInStorage storage = new StandInStorage.Builder().start()) {
+            for (int run = 0; run < 2; run++) {
+                try (StreamingReporterService reporter = streamingReporter(storage)) {
+                    stream(reporter, 20);
+                    reporter.generateReport(Collections.emptyList(), Collections.emptyList(), null);
+                }
+            }
+            List<ReceivedUpload> received = storage.getReceived();
+            assertThat("Uploads of both runs", received.size(), is(21));
+            assertThat("Path", received.get(20).getPath(), is("/api/results/unchanged"));
+        }
+    }
+
+    @Test
+    public void testFailedUploadsRetried() throws IOException {
+        configure("report.storage.retry.max-attempts", "10");
+        configure("report.storage.retry.initial-backoff", "10ms");
+        configure("report.storage.retry.max-backoff", "50ms");
+        configure("report.storage.retry.circuit-breaker.failure-threshold", "1000");
+        try (StandInStorage storage = new StandInStorage.Builder().latency(Latency.uniform(0, 5)).errors(0.2, 503)
+                .drops(0.05).start()) {
+            report(storage, 100);
+            assertThat("Results", storage.getResultCount(), is(100L));
+            assertThat("Injected failures", storage.getErrorCount() + storage.getDropCount() > 0, is(true));
+        }
+    }
 
-    @BeforeClass
-    public void setUp() {
-        logger.info("before");
-//        new Thread(new EmbeddedServer()).start();
+    @Test
+    public void testSpooledResultsReplayedWithIdempotencyKeys() throws IOException {
+        Path directory = Files.createTempDirectory("report-storage-spool");
+        configure("report.storage.spool.enabled", "true");
+        configure("report.storage.spool.directory", directory.toString());
+        configure("report.storage.spool.replay-on-start", "false");
+        try (StandInStorage storage = new StandInStorage.Builder().errors(1.0, 400).start()) {
+            report(storage, 5);
+            assertThat("Results accepted", storage.getResultCount(), is(0L));
+        }
+
+        try (StandInStorage storage = new StandInStorage.Builder().start();
+             ResultSpool spool = new ResultSpool(directory, 1 << 20)) {
+            configure("report.storage.port", String.valueOf(storage.getPort()));
+            ConfigFactory.invalidateCaches();
+            new SpoolReplayer(new RestTemplate(), spool).run();
+            List<ReceivedUpload> received = storage.getReceived();
+            assertThat("Replayed results", storage.getResultCount(), is(5L));
+            assertThat("Distinct keys of replays", received.stream().map(ReceivedUpload::getIdempotencyKey)
+                    .filter(Objects::nonNull).distinct().count(), is(5L));
+            assertThat("Key left in body", received.get(0).getBody().contains(SpoolReplayer.KEY_FIELD), is(false));
+        }
+    }
+
+    @Test
+    public void testResultsUploadedWithoutBlocking() throws IOException {
+        configure("report.storage.transport.type", "async");
+        configure("report.storage.transport.compression.type", "gzip");
+        configure("report.storage.executor.threads", "2");
+        configure("report.storage.retry.max-attempts", "10");
+        configure("report.storage.retry.initial-backoff", "10ms");
+        configure("report.storage.retry.circuit-breaker.failure-threshold", "1000");
+        try (StandInStorage storage = new StandInStorage.Builder().latency(Latency.uniform(20, 40)).errors(0.1, 503)
+                .start()) {
+            report(storage, 300);
+            assertThat("Results", storage.getResultCount(), is(300L));
+            assertThat("Path", storage.getReceived().get(0).getPath(), is("/api"));
+        }
+    }
+
+    @Test
+    public void testAttachmentsStreamedAfterResults() throws IOException {
+        Path file = Files.createTempFile("report-storage-attachment", ".png");
+        byte[] content = new byte[2500];
+        new Random(0).nextBytes(content);
+        Files.write(file, content);
+        configure("report.storage.attachments.chunk-size", "1k");
+        try (StandInStorage storage = new StandInStorage.Builder().start()) {
+            report(storage, 2, new Attachment("screenshot.png", file, "image/png"));
+            List<ReceivedUpload> received = storage.getReceived();
+            assertThat("Results", storage.getResultCount(), is(2L));
+            assertThat("Result first", received.get(0).getPath(), is("/api"));
+            List<ReceivedUpload> chunks = received.stream().filter(r -> r.getPath().equals("/api/attachments"))
+                    .collect(Collectors.toList());
+            assertThat("Chunks", chunks.size(), is(6));
+            assertThat("Content type", chunks.get(0).getContentType(), is("image/png"));
+            assertThat("Bytes", chunks.stream().mapToInt(r -> r.getBytes().length).sum(), is(5000));
+        } finally {
+            Files.delete(file);
+        }
     }
 
     @Test
-    public void testDemo() {
-        logger.info("test");
-    }
-
-//    private class EmbeddedServer extends AbstractHandler implements Runnable {
-//
-//        /**
-//         * {@inheritDoc}
-//         */
-//        @Override
-//        public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse
-// response)
-//                throws IOException, ServletException {
-//            String content = request.getReader().lines().reduce("", (s1, s2) -> s1 + s2);
-//            logger.info(content);
-//            response.setStatus(200);
-//        }
-//
-//        /**
-//         * {@inheritDoc}
-//         */
-//        @Override
-//        public void run() {
-//            try {
-//                Server server = new Server(8080);
-//                ContextHandler contextHandler = new ContextHandler();
-//                contextHandler.setContextPath("/api");
-//                contextHandler.setHandler(this);
-//
-//                server.setHandler(contextHandler);
-//
-//                server.start();
-//                logger.info("Server has been started.");
-//                Thread.sleep(10000);
-////                int count = 0;
-////                while (!requestHandled) {
-////                    Thread.sleep(100);
-////                    if (++count > maxCount) {
-////                        break;
-////                    }
-////                }
-//                server.stop();
-//                logger.info("Server has been stopped.");
-//            } catch (Exception e) {
-//                e.printStackTrace();
-//            }
-//        }
-//    }
+    public void testLoad() throws IOException {
+        int cases = Integer.getInteger("standin.cases", 2000);
+        configure("report.storage.batch.enabled", "true");
+        configure("report.storage.transport.compression.type", "gzip");
+        try (StandInStorage storage = new StandInStorage.Builder().latency(Latency.exponential(2)).recording(false)
+                .start()) {
+            long start = System.currentTimeMillis();
+            report(storage, cases);
+            logger.info("{} cases have been reported in {} ms", cases, System.currentTimeMillis() - start);
+            assertThat("Results", storage.getResultCount(), is((long) cases));
+        }
+    }
+
+    private void configure(String key, String value) {
+        properties.setProperty(key, value);
+        System.setProperty(key, value);
+    }
+
+    private StreamingReporterService streamingReporter(StandInStorage storage) {
+        configure("report.storage.port", String.valueOf(storage.getPort()));
+        ConfigFactory.invalidateCaches();
+        return new StreamingReporterService();
+    }
+
+    /**
+     * Let the test method of {@link #suite} finish {@code cases} times while the reporter listens.
+     */
+    private static void stream(StreamingReporterService reporter, int cases) {
+        IInvokedMethod invoked = suite(cases).getAllInvokedMethods().get(0);
+        for (int i = 0; i < cases; i++) {
+            reporter.afterInvocation(invoked, invoked.getTestResult());
+        }
+    }
+
+    private void report(StandInStorage storage, int cases, Attachment... attachments) {
+        configure("report.storage.port", String.valueOf(storage.getPort()));
+        ConfigFactory.invalidateCaches();
+        try (ReporterService reporter = new ReporterService()) {
+            reporter.generateReport(Collections.emptyList(), Collections.singletonList(suite(cases, attachments)),
+                    null);
+        }
+    }
+
+    /**
+     * A suite having run the same test method {@code cases} times, each run having attached the given files.
+     */
+    private static ISuite suite(int cases, Attachment... attachments) {
+        ITestClass testClass = stub(ITestClass.class);
+        when(testClass.getName()).thenReturn(ReporterServiceTest.class.getName());
+        ConstructorOrMethod com = stub(ConstructorOrMethod.class);
+        when(com.getMethod()).thenReturn(annotatedMethod());
+        ITestNGMethod method = stub(ITestNGMethod.class);
+        when(method.getMethodName()).thenReturn("testMethod");
+        when(method.getTestClass()).thenReturn(testClass);
+        when(method.getConstructorOrMethod()).thenReturn(com);
+        ITestResult result = stub(ITestResult.class);
+        when(result.getStatus()).thenReturn(ITestResult.SUCCESS);
+        when(result.getTestName()).thenReturn("functional");
+        when(result.getMethod()).thenReturn(method);
+        when(result.getAttribute(anyString())).thenReturn(attachments.length == 0 ? null :
+                new ArrayList<>(Arrays.asList(attachments)));
+        IInvokedMethod invoked = stub(IInvokedMethod.class);
+        when(invoked.getTestMethod()).thenReturn(method);
+        when(invoked.getTestResult()).thenReturn(result);
+        when(invoked.isTestMethod()).thenReturn(true);
+
+        ISuite suite = stub(ISuite.class);
+        when(suite.getName()).thenReturn("functional");
+        when(suite.getAllInvokedMethods()).thenReturn(Collections.nCopies(cases, invoked));
+        return suite;
+    }
+
+    /**
+     * Mocks keeping no record of their invocations, which would otherwise pile up in load tests.
+     */
+    private static <T> T stub(Class<T> type) {
+        return mock(type, withSettings().stubOnly());
+    }
+
+    private static Method annotatedMethod() {
+        try {
+            return ReporterServiceTest.class.getMethod("testMethod");
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 }
@@ -18,13 +18,28 @@ package com.github.yongchristophertang.reporter;
 
 import com.github.yongchristophertang.reporter.annotation.Bug;
 import com.github.yongchristophertang.reporter.annotation.TestCase;
+import com.typesafe.config.ConfigFactory;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.testng.IInvokedMethod;
+import org.testng.ISuite;
+import org.testng.ITestClass;
 import org.testng.ITestNGMethod;
+import org.testng.ITestResult;
 import org.testng.internal.ConstructorOrMethod;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.mockito.Mockito.mock;
@@ -48,6 +63,19 @@ public class ReporterServiceTest {
         System.out.println("Just another test");
     }
 
+    @Test
+    public void testCasePostProcessorWithClassLevelValues() throws NoSuchMethodException {
+        ITestNGMethod testNGMethod = mock(ITestNGMethod.class);
+        ConstructorOrMethod com = mock(ConstructorOrMethod.class);
+        when(testNGMethod.getConstructorOrMethod()).thenReturn(com);
+        when(com.getMethod()).thenReturn(AnnotatedTestClass.class.getMethod("testMethod"));
+
+        ReporterService.CasePostProcessor processor = new ReporterService().getCasePostProcessor(testNGMethod);
+        Assert.assertThat("Bug info", processor.getBugInfo(), is("Class_Bug_Id"));
+        Assert.assertThat("Case description", processor.getCaseDescription(), is("method description"));
+        Assert.assertThat("Expected results", processor.getExpectedResult(), is("method expected results"));
+    }
+
     @Test
     public void testCasePostProcessorWithAllValueDefined() throws NoSuchMethodException {
         ITestNGMethod testNGMethod = mock(ITestNGMethod.class);
@@ -73,4 +101,79 @@ public class ReporterServiceTest {
         Assert.assertThat("Case description", processor.getCaseDescription(), is(""));
         Assert.assertThat("Expected results", processor.getExpectedResult(), is(""));
     }
+
+    @Test
+    public void testOrderedParallelExtraction() throws NoSuchMethodException {
+        System.setProperty(AbstractReporter.STORAGE_EXTRACTION_PARALLELISM, "4");
+        System.setProperty(AbstractReporter.STORAGE_EXTRACTION_ORDERED, "true");
+        ConfigFactory.invalidateCaches();
+        List<String> names = new ArrayList<>();
+        try (ReporterService reporter = new ReporterService()) {
+            reporter.extractResults(Arrays.asList(suite("first", 0, 200), suite("second", 200, 200)),
+                    r -> names.add(r.getCaseName()));
+        } finally {
+            System.clearProperty(AbstractReporter.STORAGE_EXTRACTION_PARALLELISM);
+            System.clearProperty(AbstractReporter.STORAGE_EXTRACTION_ORDERED);
+            ConfigFactory.invalidateCaches();
+        }
+        Assert.assertThat("Results in order", names,
+                is(IntStream.range(0, 400).mapToObj(i -> "testMethod" + i).collect(Collectors.toList())));
+    }
+
+    @Test
+    public void testIdempotencyKeysStableAcrossReports() throws NoSuchMethodException {
+        System.setProperty(AbstractReporter.STORAGE_EXTRACTION_PARALLELISM, "4");
+        System.setProperty(AbstractReporter.STORAGE_RUN_ID, "run");
+        ConfigFactory.invalidateCaches();
+        List<ISuite> suites = Collections.singletonList(suite("suite", 0, 200));
+        Map<String, String> first = new ConcurrentHashMap<>();
+        Map<String, String> second = new ConcurrentHashMap<>();
+        Map<String, String> other = new ConcurrentHashMap<>();
+        try (ReporterService reporter = new ReporterService(); ReporterService another = new ReporterService()) {
+            reporter.extractResults(suites, r -> first.put(r.getCaseName(), r.getIdempotencyKey()));
+            reporter.extractResults(suites, r -> second.put(r.getCaseName(), r.getIdempotencyKey()));
+            another.extractResults(suites, r -> other.put(r.getCaseName(), r.getIdempotencyKey()));
+        } finally {
+            System.clearProperty(AbstractReporter.STORAGE_EXTRACTION_PARALLELISM);
+            System.clearProperty(AbstractReporter.STORAGE_RUN_ID);
+            ConfigFactory.invalidateCaches();
+        }
+        Assert.assertThat("Distinct keys", new HashSet<>(first.values()).size(), is(200));
+        Assert.assertThat("Keys of the next report", second, is(first));
+        Assert.assertThat("Keys of another reporter", other, is(first));
+    }
+
+    /**
+     * A suite of invoked methods named testMethod{@code first} onwards.
+     */
+    private ISuite suite(String name, int first, int count) throws NoSuchMethodException {
+        ITestClass testClass = mock(ITestClass.class);
+        when(testClass.getName()).thenReturn(getClass().getName());
+        ConstructorOrMethod com = mock(ConstructorOrMethod.class);
+        when(com.getMethod()).thenReturn(getClass().getMethod("testMethod"));
+        List<IInvokedMethod> invoked = new ArrayList<>();
+        for (int i = first; i < first + count; i++) {
+            ITestNGMethod method = mock(ITestNGMethod.class);
+            when(method.getMethodName()).thenReturn("testMethod" + i);
+            when(method.getTestClass()).thenReturn(testClass);
+            when(method.getConstructorOrMethod()).thenReturn(com);
+            ITestResult result = mock(ITestResult.class);
+            IInvokedMethod invokedMethod = mock(IInvokedMethod.class);
+            when(invokedMethod.getTestMethod()).thenReturn(method);
+            when(invokedMethod.getTestResult()).thenReturn(result);
+            invoked.add(invokedMethod);
+        }
+        ISuite suite = mock(ISuite.class);
+        when(suite.getName()).thenReturn(name);
+        when(suite.getAllInvokedMethods()).thenReturn(invoked);
+        return suite;
+    }
+
+    @Bug("Class_Bug_Id")
+    @TestCase(value = "class description", expected = "class expected results")
+    public static class AnnotatedTestClass {
+        @TestCase(value = "method description", expected = "method expected results")
+        public void testMethod() {
+        }
+    }
 }
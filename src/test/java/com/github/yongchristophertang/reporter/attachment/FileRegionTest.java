@@ -0,0 +1,71 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.attachment;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+
+/**
+ * Tests for {@link FileRegion}
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class FileRegionTest {
+    private final byte[] content = new byte[10000];
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        file = Files.createTempFile("file-region", ".bin");
+        Files.write(file, content);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.delete(file);
+    }
+
+    @Test
+    public void testRegionTransferredAgainAndAgain() throws IOException {
+        FileRegion region = new FileRegion(file, 4000, 5000);
+        for (int i = 0; i < 2; i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            region.transferTo(out);
+            Assert.assertThat("Region bytes", out.toByteArray(), is(Arrays.copyOfRange(content, 4000, 9000)));
+        }
+    }
+
+    @Test(expected = EOFException.class)
+    public void testRegionBeyondEndOfFile() throws IOException {
+        new FileRegion(file, 8000, 5000).transferTo(new ByteArrayOutputStream());
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.yongchristophertang.reporter.delta;
+
+import com.github.yongchristophertang.reporter.testcase.TestCaseResult;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+
+/**
+ * Tests for {@link ResultIndex}
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class ResultIndexTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testMissingIndexMatchesNothing() throws Exception {
+        ResultIndex index = ResultIndex.load(folder.getRoot().toPath().resolve("results.index"));
+        Assert.assertThat("Previous run", index.getPreviousRunId(), nullValue());
+        Assert.assertThat("Unchanged", index.add(result("testMethod", 1, "line")), is(false));
+    }
+
+    @Test
+    public void testUnchangedResultsAreMatchedAsOftenAsTheyOccurred() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("results.index");
+        ResultIndex first = ResultIndex.load(file);
+        first.add(result("testMethod", 1, "line"));
+        first.add(result("testMethod", 1, "line"));
+        first.add(result("other", 1, "line"));
+        first.save(file, "run-1");
+
+        ResultIndex second = ResultIndex.load(file);
+        Assert.assertThat("Previous run", second.getPreviousRunId(), is("run-1"));
+        Assert.assertThat("First occurrence", second.add(result("testMethod", 1, "line")), is(true));
+        Assert.assertThat("Second occurrence", second.add(result("testMethod", 1, "line")), is(true));
+        Assert.assertThat("Third occurrence", second.add(result("testMethod", 1, "line")), is(false));
+        Assert.assertThat("Status changed", second.add(result("other", 2, "line")), is(false));
+        Assert.assertThat("Index size", Files.size(file), is(4L + 2 + 5 + 4 + 3 * 8));
+    }
+
+    @Test
+    public void testSavedRunIsComparedWithByTheNextOne() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("results.index");
+        ResultIndex index = ResultIndex.load(file);
+        index.add(result("testMethod", 1, "line"));
+        index.add(result("other", 1, "line"));
+        index.save(file, "run-1");
+
+        Assert.assertThat("Unchanged", index.add(result("testMethod", 1, "line")), is(true));
+        Assert.assertThat("Status changed", index.add(result("other", 2, "line")), is(false));
+        index.reset();
+        Assert.assertThat("Unchanged after an incomplete run", index.add(result("testMethod", 1, "line")), is(true));
+        index.save(file, "run-3");
+
+        Assert.assertThat("Previous run", index.getPreviousRunId(), is("run-3"));
+        Assert.assertThat("Dropped by the last run", index.add(result("other", 1, "line")), is(false));
+        Assert.assertThat("Unchanged since the last run", index.add(result("testMethod", 1, "line")), is(true));
+        Assert.assertThat("Matched once", index.add(result("testMethod", 1, "line")), is(false));
+    }
+
+    @Test
+    public void testOutputsArePartOfTheFingerprint() {
+        Assert.assertThat(ResultIndex.fingerprint(result("testMethod", 1, "line")) ==
+                ResultIndex.fingerprint(result("testMethod", 1, "other line")), is(false));
+    }
+
+    private static TestCaseResult result(String caseName, int status, String output) {
+        return new TestCaseResult.TestCaseResultBuilder(caseName, 10, status, Collections.singletonList(output))
+                .suiteName("suite").className("a.b.C").createTestCaseResult();
+    }
+}
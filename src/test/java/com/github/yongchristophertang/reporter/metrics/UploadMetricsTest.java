@@ -0,0 +1,98 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+
+/**
+ * Tests for {@link UploadMetrics}
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class UploadMetricsTest {
+    private final UploadMetrics metrics = new UploadMetrics();
+
+    private void attempt(long millis) {
+        metrics.onQueued();
+        metrics.onStarted();
+        metrics.onAttempted(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    @Test
+    public void testLatencyPercentiles() {
+        for (int i = 1; i <= 1000; i++) {
+            attempt(i);
+        }
+        Assert.assertEquals("p50", 500, metrics.getLatencyP50Millis(), 1);
+        Assert.assertEquals("p99", 990, metrics.getLatencyP99Millis(), 1);
+        Assert.assertEquals("max", 1000, metrics.getLatencyMaxMillis(), 1);
+
+        // latencies recorded after a read are merged into the earlier ones
+        attempt(5000);
+        Assert.assertEquals("max", 5000, metrics.getLatencyMaxMillis(), 5);
+        Assert.assertThat("Attempts", metrics.getAttempts(), is(1001L));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSummary() {
+        attempt(10);
+        metrics.onSent(100);
+        metrics.onCompleted(true);
+        metrics.onFlushed(42);
+        Map<String, Object> summary = metrics.getSummary();
+        Assert.assertThat("Uploads", summary.get("uploads"), is(1L));
+        Assert.assertThat("Bytes", summary.get("bytesSent"), is(100L));
+        Assert.assertThat("Flush", summary.get("flushMillis"), is(42L));
+        Assert.assertThat("Latencies", ((Map<String, Object>) summary.get("latencyMillis")).get("count"), is(1L));
+    }
+
+    @Test
+    public void testJmxRegistration() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName pattern = new ObjectName("com.github.yongchristophertang.reporter:type=UploadMetrics,*");
+        int before = server.queryNames(pattern, null).size();
+
+        metrics.register();
+        metrics.onCompleted(false);
+        Assert.assertThat("Registered", server.queryNames(pattern, null).size(), is(before + 1));
+        ObjectName name = server.queryNames(pattern, null).stream()
+                .filter(n -> Long.valueOf(1).equals(attribute(server, n))).findFirst().orElse(null);
+        Assert.assertTrue("Failures readable through JMX", name != null);
+
+        metrics.unregister();
+        Assert.assertThat("Unregistered", server.queryNames(pattern, null).size(), is(before));
+    }
+
+    private static Object attribute(MBeanServer server, ObjectName name) {
+        try {
+            return server.getAttribute(name, "Failures");
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
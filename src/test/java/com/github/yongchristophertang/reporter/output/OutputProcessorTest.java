@@ -0,0 +1,133 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.output;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+
+/**
+ * Tests for {@link OutputProcessor}
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class OutputProcessorTest {
+    private final List<OutputChunk> chunks = new ArrayList<>();
+    private boolean failing;
+
+    private static List<String> lines(int count) {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            lines.add("line" + i);
+        }
+        return lines;
+    }
+
+    private CompletableFuture<Boolean> upload(OutputChunk chunk) {
+        chunks.add(chunk);
+        return CompletableFuture.completedFuture(!failing);
+    }
+
+    @Test
+    public void testOutputsWithinCapsAreKept() {
+        OutputProcessor processor = new OutputProcessor(10, 1000, 0, 100, 0, 0, this::upload);
+        OutputProcessor.Processed processed = processor.process(lines(10));
+        Assert.assertThat("Outputs", processed.getOutputs(), is(lines(10)));
+        Assert.assertThat("Reference", processed.getRef(), nullValue());
+    }
+
+    @Test
+    public void testLineCapKeepsHeadAndTail() {
+        OutputProcessor processor = new OutputProcessor(5, 0, 0, 100, 0, 0, this::upload);
+        List<String> outputs = processor.process(lines(100)).getOutputs();
+        Assert.assertThat("Outputs", outputs, is(Arrays.asList("line0", "line1", "... 96 lines truncated ...",
+                "line98", "line99")));
+    }
+
+    @Test
+    public void testByteCapKeepsHeadAndTail() {
+        OutputProcessor processor = new OutputProcessor(0, 12, 0, 100, 0, 0, this::upload);
+        List<String> outputs = processor.process(lines(10)).getOutputs();
+        Assert.assertThat("Outputs", outputs, is(Arrays.asList("line0", "... 8 lines truncated ...", "line9")));
+    }
+
+    @Test
+    public void testLargeOutputsAreUploadedOnceInChunks() {
+        OutputProcessor processor = new OutputProcessor(0, 0, 50, 16, 0, 0, this::upload);
+        OutputProcessor.Processed first = processor.process(lines(20));
+        OutputProcessor.Processed second = processor.process(lines(20));
+        Assert.assertThat("Same reference", second.getRef(), is(first.getRef()));
+        Assert.assertThat("Inline outputs", first.getOutputs().size(), is(0));
+
+        byte[] block = String.join("\n", lines(20)).getBytes(StandardCharsets.UTF_8);
+        Assert.assertThat("Chunks of one block", chunks.size(), is((block.length + 15) / 16));
+        ByteArrayOutputStream joined = new ByteArrayOutputStream();
+        for (OutputChunk chunk : chunks) {
+            Assert.assertThat("Chunk hash", chunk.getHash(), is(first.getRef()));
+            joined.write(chunk.getData(), 0, chunk.getData().length);
+        }
+        Assert.assertThat("Chunks reassemble the block", joined.toByteArray(), is(block));
+    }
+
+    @Test
+    public void testUploadedOutputsOnlyPreviewedInResults() {
+        OutputProcessor processor = new OutputProcessor(0, 0, 50, 16, 5, 1000, this::upload);
+        List<String> outputs = processor.process(lines(20)).getOutputs();
+        Assert.assertThat("Preview", outputs, is(Arrays.asList("line0", "line1", "... 16 lines truncated ...",
+                "line18", "line19")));
+    }
+
+    @Test
+    public void testOutputsUploadedAgainAfterFailedChunk() {
+        OutputProcessor processor = new OutputProcessor(0, 0, 50, 16, 0, 0, this::upload);
+        failing = true;
+        processor.process(lines(20));
+        int count = chunks.size();
+        failing = false;
+        processor.process(lines(20));
+        Assert.assertThat("Uploaded again", chunks.size(), is(2 * count));
+        processor.process(lines(20));
+        Assert.assertThat("Uploaded once succeeded", chunks.size(), is(2 * count));
+    }
+
+    @Test
+    public void testOutputsUploadedAgainInNextReport() {
+        OutputProcessor processor = new OutputProcessor(0, 0, 50, 16, 0, 0, this::upload);
+        processor.process(lines(20));
+        int count = chunks.size();
+        processor.reset();
+        processor.process(lines(20));
+        Assert.assertThat("Uploaded again", chunks.size(), is(2 * count));
+    }
+
+    @Test
+    public void testSmallOutputsAreNotUploaded() {
+        OutputProcessor processor = new OutputProcessor(0, 0, 1000, 16, 0, 0, this::upload);
+        Assert.assertThat("Reference", processor.process(lines(3)).getRef(), nullValue());
+        Assert.assertThat("Chunks", chunks.size(), is(0));
+    }
+}
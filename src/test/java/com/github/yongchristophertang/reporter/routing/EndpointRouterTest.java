@@ -0,0 +1,126 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.routing;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+
+/**
+ * Tests for {@link EndpointRouter}
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class EndpointRouterTest {
+    private final AtomicLong clock = new AtomicLong();
+    private final List<Endpoint> endpoints = Arrays.asList(new Endpoint("http://node-1:8080"),
+            new Endpoint("http://node-2:8080/"), new Endpoint("http://node-3:8080"));
+
+    private EndpointRouter router(EndpointRouter.Strategy strategy) {
+        return new EndpointRouter(endpoints, strategy, 2, 1000, clock::get);
+    }
+
+    private static Endpoint route(EndpointRouter router, String key, boolean healthy) {
+        Endpoint endpoint = router.acquire(key);
+        router.release(endpoint, healthy);
+        return endpoint;
+    }
+
+    @Test
+    public void testEndpointUrl() {
+        Assert.assertThat(endpoints.get(1).getUrl("/api"), is("http://node-2:8080/api"));
+        Assert.assertThat(endpoints.get(1).getUrl("api"), is("http://node-2:8080/api"));
+    }
+
+    @Test
+    public void testRoundRobinVisitsAllNodes() {
+        EndpointRouter router = router(EndpointRouter.Strategy.ROUND_ROBIN);
+        Set<Endpoint> visited = new HashSet<>();
+        for (int i = 0; i < 3; i++) {
+            visited.add(route(router, null, true));
+        }
+        Assert.assertThat("Visited nodes", visited.size(), is(3));
+    }
+
+    @Test
+    public void testFailingNodeIsEjectedAndReadmitted() {
+        EndpointRouter router = router(EndpointRouter.Strategy.ROUND_ROBIN);
+        Endpoint failing = endpoints.get(0);
+        failing.acquire();
+        router.release(failing, false);
+        failing.acquire();
+        router.release(failing, false);
+        for (int i = 0; i < 10; i++) {
+            Assert.assertThat("Ejected node skipped", route(router, null, true), not(failing));
+        }
+
+        clock.addAndGet(1000);
+        Set<Endpoint> visited = new HashSet<>();
+        for (int i = 0; i < 3; i++) {
+            visited.add(route(router, null, true));
+        }
+        Assert.assertThat("Node readmitted", visited.contains(failing), is(true));
+    }
+
+    @Test
+    public void testConsistentHashKeepsKeyOnOneNodeUntilEjected() {
+        EndpointRouter router = router(EndpointRouter.Strategy.CONSISTENT_HASH);
+        Endpoint shard = route(router, "suite/com.example.FooTest", true);
+        for (int i = 0; i < 10; i++) {
+            Assert.assertThat("Same shard", route(router, "suite/com.example.FooTest", true), is(shard));
+        }
+
+        route(router, "suite/com.example.FooTest", false);
+        route(router, "suite/com.example.FooTest", false);
+        Endpoint failover = route(router, "suite/com.example.FooTest", true);
+        Assert.assertThat("Failover to another shard", failover, not(shard));
+        Assert.assertThat("Failover is stable", route(router, "suite/com.example.FooTest", true), is(failover));
+    }
+
+    @Test
+    public void testLeastOutstandingAvoidsBusyNodes() {
+        EndpointRouter router = router(EndpointRouter.Strategy.LEAST_OUTSTANDING);
+        Endpoint busy = router.acquire(null);
+        Endpoint second = router.acquire(null);
+        Endpoint third = router.acquire(null);
+        Assert.assertThat("All nodes busy once", new HashSet<>(Arrays.asList(busy, second, third)).size(), is(3));
+
+        router.release(second, true);
+        router.release(third, true);
+        for (int i = 0; i < 5; i++) {
+            Assert.assertThat("Busy node avoided", route(router, null, true), not(busy));
+        }
+    }
+
+    @Test
+    public void testAllNodesEjectedStillSelectsOne() {
+        EndpointRouter router = router(EndpointRouter.Strategy.ROUND_ROBIN);
+        for (int i = 0; i < 6; i++) {
+            route(router, null, false);
+        }
+        Assert.assertTrue("A node is selected", endpoints.contains(route(router, null, true)));
+    }
+}
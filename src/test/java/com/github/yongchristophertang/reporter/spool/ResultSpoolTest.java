@@ -0,0 +1,124 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.spool;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+
+/**
+ * Tests for {@link ResultSpool}
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class ResultSpoolTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testRecordsAreReplayedByNextSpool() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        try (ResultSpool spool = new ResultSpool(directory, 1024)) {
+            spool.append(bytes("first"));
+            spool.append(bytes("second"));
+        }
+
+        List<String> replayed = new ArrayList<>();
+        try (ResultSpool spool = new ResultSpool(directory, 1024)) {
+            int count = spool.replay(r -> replayed.add(new String(r, StandardCharsets.UTF_8)));
+            Assert.assertThat("Delivered records", count, is(2));
+        }
+        Assert.assertThat("First record", replayed.get(0), is("first"));
+        Assert.assertThat("Second record", replayed.get(1), is("second"));
+        Assert.assertThat("Segments left", new ResultSpool(directory, 1024).getSegmentCount(), is(0));
+    }
+
+    @Test
+    public void testOwnSegmentIsNotReplayed() throws Exception {
+        try (ResultSpool spool = new ResultSpool(folder.getRoot().toPath(), 1024)) {
+            spool.append(bytes("record"));
+            Assert.assertThat("Delivered records", spool.replay(r -> true), is(0));
+        }
+    }
+
+    @Test
+    public void testRejectedRecordsStayInSpool() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        try (ResultSpool spool = new ResultSpool(directory, 1024)) {
+            spool.append(bytes("record"));
+        }
+        try (ResultSpool spool = new ResultSpool(directory, 1024)) {
+            Assert.assertThat("Delivered records", spool.replay(r -> false), is(0));
+        }
+        try (ResultSpool spool = new ResultSpool(directory, 1024)) {
+            Assert.assertThat("Delivered records", spool.replay(r -> true), is(1));
+        }
+    }
+
+    @Test
+    public void testKeptSegmentStopsReplay() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        try (ResultSpool spool = new ResultSpool(directory, 16)) {
+            spool.append(bytes("0123456789"));
+            spool.append(bytes("0123456789"));
+        }
+        try (ResultSpool spool = new ResultSpool(directory, 16)) {
+            Assert.assertThat("Delivered segments", spool.replaySegments(records -> false), is(0));
+            Assert.assertThat("Segments kept", spool.getSegmentCount(), is(2));
+            Assert.assertThat("Delivered segments", spool.replaySegments(records -> records.size() == 1), is(2));
+            Assert.assertThat("Segments left", spool.getSegmentCount(), is(0));
+        }
+    }
+
+    @Test
+    public void testSegmentsRollOverBySize() throws Exception {
+        try (ResultSpool spool = new ResultSpool(folder.getRoot().toPath(), 16)) {
+            spool.append(bytes("0123456789"));
+            spool.append(bytes("0123456789"));
+            Assert.assertThat("Segments", spool.getSegmentCount(), is(2));
+        }
+    }
+
+    @Test
+    public void testTornTailIsSkipped() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        try (ResultSpool spool = new ResultSpool(directory, 1024)) {
+            spool.append(bytes("complete"));
+        }
+        Path segment = Files.list(directory).findFirst().get();
+        Files.write(segment, new byte[]{0, 0, 0, 100, 1, 2, 3, 4, 5}, StandardOpenOption.APPEND);
+
+        try (ResultSpool spool = new ResultSpool(directory, 1024)) {
+            Assert.assertThat("Delivered records", spool.replay(r -> true), is(1));
+        }
+    }
+}
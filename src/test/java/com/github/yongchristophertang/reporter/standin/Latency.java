@@ -0,0 +1,53 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.standin;
+
+import java.util.Random;
+
+/**
+ * Distribution of the time {@link StandInStorage} takes to respond to an upload.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+@FunctionalInterface
+public interface Latency {
+    /**
+     * @param random source of randomness owned by the calling handler thread
+     * @return milliseconds to wait before responding
+     */
+    long nextMillis(Random random);
+
+    static Latency none() {
+        return random -> 0;
+    }
+
+    static Latency fixed(long millis) {
+        return random -> millis;
+    }
+
+    static Latency uniform(long minMillis, long maxMillis) {
+        return random -> minMillis + (long) (random.nextDouble() * (maxMillis - minMillis));
+    }
+
+    /**
+     * Mostly quick responses with a long tail, as a loaded server tends to give.
+     */
+    static Latency exponential(long meanMillis) {
+        return random -> (long) (-meanMillis * Math.log(1 - random.nextDouble()));
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.standin;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An upload accepted by {@link StandInStorage}, with its body decoded from any content encoding.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class ReceivedUpload {
+    private final String path;
+    private final String contentType;
+    private final String contentEncoding;
+    private final String idempotencyKey;
+    private final byte[] body;
+    private final int results;
+
+    ReceivedUpload(String path, String contentType, String contentEncoding, String idempotencyKey, byte[] body,
+                   int results) {
+        this.path = path;
+        this.contentType = contentType;
+        this.contentEncoding = contentEncoding;
+        this.idempotencyKey = idempotencyKey;
+        this.body = body;
+        this.results = results;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    /**
+     * @return key sent in the Idempotency-Key header, or null if there was none
+     */
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public String getBody() {
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    public byte[] getBytes() {
+        return body.clone();
+    }
+
+    /**
+     * @return number of test case results carried, 0 for output chunks and attachments
+     */
+    public int getResults() {
+        return results;
+    }
+
+    @Override
+    public String toString() {
+        return "ReceivedUpload{" +
+                "path='" + path + '\'' +
+                ", contentType='" + contentType + '\'' +
+                ", contentEncoding='" + contentEncoding + '\'' +
+                ", idempotencyKey='" + idempotencyKey + '\'' +
+                ", results=" + results +
+                ", bytes=" + body.length +
+                '}';
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.standin;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Local stand-in for the remote storage. It accepts single results, batches and output chunks on any path, in json,
+ * smile or cbor, records what it receives, and can be made to misbehave: slow responses, error responses, slowly
+ * read request bodies and connections dropped without a response. Only meant for functional and load tests on a
+ * single box.
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class StandInStorage implements AutoCloseable {
+    private static final Logger logger = LogManager.getLogger();
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
+    private final ObjectMapper cborMapper = new ObjectMapper(new CBORFactory());
+    private final Latency latency;
+    private final double errorRate;
+    private final int errorStatus;
+    private final double dropRate;
+    private final long readBytesPerSecond;
+    private final boolean recording;
+
+    private final Queue<ReceivedUpload> received = new ConcurrentLinkedQueue<>();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong uploads = new AtomicLong();
+    private final AtomicLong results = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong drops = new AtomicLong();
+
+    private StandInStorage(Builder builder) throws IOException {
+        this.latency = builder.latency;
+        this.errorRate = builder.errorRate;
+        this.errorStatus = builder.errorStatus;
+        this.dropRate = builder.dropRate;
+        this.readBytesPerSecond = builder.readBytesPerSecond;
+        this.recording = builder.recording;
+        this.executor = Executors.newFixedThreadPool(builder.threads, r -> {
+            Thread thread = new Thread(r, "stand-in-storage");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", builder.port), builder.backlog);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+        logger.info("Stand-in storage is listening on port {}", getPort());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        Random random = ThreadLocalRandom.current();
+        try {
+            byte[] body = read(exchange.getRequestBody());
+            if (random.nextDouble() < dropRate) {
+                drops.incrementAndGet();
+                // closing before any response is sent closes the connection under the client
+                return;
+            }
+            sleep(latency.nextMillis(random));
+            if (random.nextDouble() < errorRate) {
+                errors.incrementAndGet();
+                exchange.sendResponseHeaders(errorStatus, -1);
+                return;
+            }
+            int status = 200;
+            try {
+                accept(exchange, decode(body, exchange.getRequestHeaders().getFirst("Content-Encoding")));
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Stand-in storage cannot read the upload to {}", exchange.getRequestURI(), e);
+                status = 400;
+            }
+            exchange.sendResponseHeaders(status, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void accept(HttpExchange exchange, byte[] body) throws IOException {
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        // files attached to results carry the key of their result
+        int count = exchange.getRequestHeaders().containsKey("X-Result-Key") ? 0 : countResults(contentType, body);
+        uploads.incrementAndGet();
+        results.addAndGet(count);
+        if (recording) {
+            received.add(new ReceivedUpload(exchange.getRequestURI().getPath(), contentType,
+                    exchange.getRequestHeaders().getFirst("Content-Encoding"),
+                    exchange.getRequestHeaders().getFirst("Idempotency-Key"), body, count));
+        }
+    }
+
+    private int countResults(String contentType, byte[] body) throws IOException {
+        if (contentType == null || contentType.startsWith("text/")) {
+            return 0;
+        }
+        if (contentType.contains("ndjson")) {
+            int count = 0;
+            for (String line : new String(body, StandardCharsets.UTF_8).split("\n")) {
+                if (!line.trim().isEmpty()) {
+                    mapper.readTree(line);
+                    count++;
+                }
+            }
+            return count;
+        }
+        if (contentType.contains("smile") || contentType.contains("cbor")) {
+            // a single binary result, or a batch of them as a sequence
+            ObjectMapper binary = contentType.contains("smile") ? smileMapper : cborMapper;
+            MappingIterator<JsonNode> records = binary.reader(JsonNode.class).readValues(body);
+            int count = 0;
+            for (; records.hasNextValue(); records.nextValue()) {
+                count++;
+            }
+            return count;
+        }
+        JsonNode node = mapper.readTree(body);
+        if (node.has("run") && node.has("results")) {
+            return node.get("results").size();
+        }
+        return node.isArray() ? node.size() : 1;
+    }
+
+    /**
+     * Read the whole request body, at most at the configured rate.
+     */
+    private byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[readBytesPerSecond > 0 ? (int) Math.min(8192, Math.max(1, readBytesPerSecond / 10))
+                : 8192];
+        int n;
+        while ((n = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, n);
+            if (readBytesPerSecond > 0) {
+                sleep(n * 1000L / readBytesPerSecond);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] decode(byte[] body, String contentEncoding) throws IOException {
+        InputStream in;
+        if ("gzip".equalsIgnoreCase(contentEncoding)) {
+            in = new GZIPInputStream(new ByteArrayInputStream(body));
+        } else if ("deflate".equalsIgnoreCase(contentEncoding)) {
+            in = new InflaterInputStream(new ByteArrayInputStream(body));
+        } else {
+            return body;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length * 4);
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return uploads accepted so far, in order of arrival, if recording is enabled
+     */
+    public List<ReceivedUpload> getReceived() {
+        return new ArrayList<>(received);
+    }
+
+    /**
+     * @return all requests, including those answered with an injected failure
+     */
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    public long getUploadCount() {
+        return uploads.get();
+    }
+
+    public long getResultCount() {
+        return results.get();
+    }
+
+    public long getErrorCount() {
+        return errors.get();
+    }
+
+    public long getDropCount() {
+        return drops.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+        logger.info("Stand-in storage has received {} requests, accepted {} uploads carrying {} results, " +
+                "injected {} errors and {} dropped connections", requests.get(), uploads.get(), results.get(),
+                errors.get(), drops.get());
+    }
+
+    public static final class Builder {
+        private int port;
+        private int threads = 16;
+        private int backlog = 1024;
+        private Latency latency = Latency.none();
+        private double errorRate;
+        private int errorStatus = 503;
+        private double dropRate;
+        private long readBytesPerSecond;
+        private boolean recording = true;
+
+        /**
+         * @param port port to listen on, 0 for any free port
+         */
+        public Builder port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        /**
+         * @param threads requests handled at the same time
+         */
+        public Builder threads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * @param backlog connections waiting to be accepted
+         */
+        public Builder backlog(int backlog) {
+            this.backlog = backlog;
+            return this;
+        }
+
+        public Builder latency(Latency latency) {
+            this.latency = latency;
+            return this;
+        }
+
+        /**
+         * @param errorRate   fraction of requests answered with {@code errorStatus}
+         * @param errorStatus http status of the injected errors
+         */
+        public Builder errors(double errorRate, int errorStatus) {
+            this.errorRate = errorRate;
+            this.errorStatus = errorStatus;
+            return this;
+        }
+
+        /**
+         * @param dropRate fraction of requests whose connection is closed without a response
+         */
+        public Builder drops(double dropRate) {
+            this.dropRate = dropRate;
+            return this;
+        }
+
+        /**
+         * @param readBytesPerSecond rate at which request bodies are read, 0 for as fast as possible
+         */
+        public Builder readRate(long readBytesPerSecond) {
+            this.readBytesPerSecond = readBytesPerSecond;
+            return this;
+        }
+
+        /**
+         * @param recording whether to keep every upload received, rather than just counting them for load tests
+         */
+        public Builder recording(boolean recording) {
+            this.recording = recording;
+            return this;
+        }
+
+        public StandInStorage start() throws IOException {
+            return new StandInStorage(this);
+        }
+    }
+}
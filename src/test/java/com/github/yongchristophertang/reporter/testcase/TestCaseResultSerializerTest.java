@@ -0,0 +1,93 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.testcase;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.introspect.Annotated;
+import com.fasterxml.jackson.databind.introspect.JacksonAnnotationIntrospector;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.is;
+
+/**
+ * Tests for {@link TestCaseResultSerializer}
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class TestCaseResultSerializerTest {
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ObjectMapper beanMapper = new ObjectMapper()
+            .setAnnotationIntrospector(new JacksonAnnotationIntrospector() {
+                @Override
+                public Object findSerializer(Annotated a) {
+                    return null;
+                }
+            });
+
+    @Test
+    public void testOutputMatchesBeanSerialization() throws Exception {
+        TestCaseResult result = new TestCaseResult.TestCaseResultBuilder("testMethod", 76, 2,
+                Arrays.asList("line \"one\"", "line\ttwo\n")).suiteName("Custom suite").className("a.b.C")
+                .configuration(true).bug("BUG-1").caseDescription("description").expectedResult("expected")
+                .date(1446517863000L).createTestCaseResult();
+        Assert.assertThat(mapper.writeValueAsString(result), is(beanMapper.writeValueAsString(result)));
+    }
+
+    @Test
+    public void testOutputsRefMatchesBeanSerialization() throws Exception {
+        TestCaseResult result = new TestCaseResult.TestCaseResultBuilder("testMethod", 76, 2,
+                Collections.singletonList("head")).outputsRef("0a1b2c").createTestCaseResult();
+        Assert.assertThat(mapper.writeValueAsString(result), is(beanMapper.writeValueAsString(result)));
+    }
+
+    @Test
+    public void testNullFieldsMatchBeanSerialization() throws Exception {
+        TestCaseResult result = new TestCaseResult.TestCaseResultBuilder("setUp", 0, 1, Collections.emptyList())
+                .createTestCaseResult();
+        Assert.assertThat(mapper.writeValueAsString(result), is(beanMapper.writeValueAsString(result)));
+    }
+
+    @Test
+    public void testResultsReadBack() throws Exception {
+        TestCaseResult result = new TestCaseResult.TestCaseResultBuilder("testMethod", 76, 2,
+                Arrays.asList("line one", "line two")).suiteName("Custom suite").className("a.b.C").bug("BUG-1")
+                .outputsRef("0a1b2c").date(1446517863000L).version("1.0").createTestCaseResult();
+        String json = mapper.writeValueAsString(result);
+        Assert.assertThat(mapper.writeValueAsString(mapper.readValue(json, TestCaseResult.class)), is(json));
+
+        TestCaseResult slim = new TestCaseResult.TestCaseResultBuilder("testMethod", 76, 1, Collections.emptyList())
+                .slim(true).createTestCaseResult();
+        Assert.assertThat("Slim", mapper.readValue(mapper.writeValueAsString(slim), TestCaseResult.class).isSlim(),
+                is(true));
+    }
+
+    @Test
+    public void testSlimResultKeepsNamesDurationAndStatus() throws Exception {
+        TestCaseResult result = new TestCaseResult.TestCaseResultBuilder("testMethod", 76, 1,
+                Collections.singletonList("line")).suiteName("suite").testName("test").className("a.b.C")
+                .caseDescription("description").date(1446517863000L).version("1.0").slim(true)
+                .createTestCaseResult();
+        Assert.assertThat(mapper.writeValueAsString(result), is("{\"suiteName\":\"suite\",\"testName\":\"test\","
+                + "\"className\":\"a.b.C\",\"caseName\":\"testMethod\",\"duration\":76,\"configuration\":false,"
+                + "\"status\":1,\"version\":\"1.0\"}"));
+    }
+}
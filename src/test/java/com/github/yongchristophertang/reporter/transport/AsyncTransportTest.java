@@ -0,0 +1,44 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.transport;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.is;
+
+/**
+ * Tests for {@link AsyncTransport}
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class AsyncTransportTest {
+
+    @Test
+    public void testThreadsDoNotKeepJvmAlive() throws Exception {
+        try (AsyncTransport ignored = new AsyncTransport(4, 4, 30000, 1000, 1000, 2)) {
+            List<Thread> threads = Thread.getAllStackTraces().keySet().stream()
+                    .filter(t -> t.getName().startsWith("report-storage-io")).collect(Collectors.toList());
+            Assert.assertThat("I/O threads started", threads.size() >= 1, is(true));
+            Assert.assertThat("Non-daemon I/O threads", threads.stream().filter(t -> !t.isDaemon()).count(), is(0L));
+        }
+    }
+}
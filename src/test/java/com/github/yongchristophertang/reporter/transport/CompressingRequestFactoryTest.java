@@ -0,0 +1,149 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.transport;
+
+import com.github.yongchristophertang.reporter.metrics.SentBytesRequestFactory;
+import com.github.yongchristophertang.reporter.metrics.UploadMetrics;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests for {@link CompressingRequestFactory}
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class CompressingRequestFactoryTest {
+    private final RecordingRequestFactory recorder = new RecordingRequestFactory();
+
+    private static String repeat(int times) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            sb.append("{\"caseName\":\"testMethod\"}");
+        }
+        return sb.toString();
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+            out.write(buffer, 0, n);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private void send(Compression compression, String body) throws IOException {
+        send(recorder, compression, body);
+    }
+
+    private void send(ClientHttpRequestFactory delegate, Compression compression, String body) throws IOException {
+        ClientHttpRequest request = new CompressingRequestFactory(delegate, compression, 100)
+                .createRequest(URI.create("http://127.0.0.1/api"), HttpMethod.POST);
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        // write in small pieces to cross the threshold in the middle of the body
+        for (int i = 0; i < bytes.length; i += 7) {
+            request.getBody().write(bytes, i, Math.min(7, bytes.length - i));
+        }
+        request.execute();
+    }
+
+    @Test
+    public void testSmallBodyIsSentAsIs() throws IOException {
+        send(Compression.GZIP, repeat(2));
+        Assert.assertThat("Encoding", recorder.headers.getFirst(HttpHeaders.CONTENT_ENCODING), nullValue());
+        Assert.assertThat("Body", new String(recorder.body.toByteArray(), StandardCharsets.UTF_8), is(repeat(2)));
+    }
+
+    @Test
+    public void testLargeBodyIsGzipped() throws IOException {
+        send(Compression.GZIP, repeat(100));
+        Assert.assertThat("Encoding", recorder.headers.getFirst(HttpHeaders.CONTENT_ENCODING), is("gzip"));
+        Assert.assertTrue("Compressed", recorder.body.size() < repeat(100).length());
+        Assert.assertThat("Body", read(new GZIPInputStream(new ByteArrayInputStream(recorder.body.toByteArray()))),
+                is(repeat(100)));
+    }
+
+    @Test
+    public void testLargeBodyIsDeflated() throws IOException {
+        send(Compression.DEFLATE, repeat(100));
+        Assert.assertThat("Encoding", recorder.headers.getFirst(HttpHeaders.CONTENT_ENCODING), is("deflate"));
+        Assert.assertThat("Body", read(new InflaterInputStream(new ByteArrayInputStream(
+                recorder.body.toByteArray()))), is(repeat(100)));
+    }
+
+    @Test
+    public void testCompressedBytesAreCounted() throws IOException {
+        UploadMetrics metrics = new UploadMetrics();
+        send(new SentBytesRequestFactory(recorder, metrics), Compression.GZIP, repeat(100));
+        Assert.assertThat("Bytes sent", metrics.getBytesSent(), is((long) recorder.body.size()));
+    }
+
+    private static class RecordingRequestFactory implements ClientHttpRequestFactory {
+        private final HttpHeaders headers = new HttpHeaders();
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        @Override
+        public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) {
+            return new ClientHttpRequest() {
+                @Override
+                public ClientHttpResponse execute() {
+                    return mock(ClientHttpResponse.class);
+                }
+
+                @Override
+                public OutputStream getBody() {
+                    return body;
+                }
+
+                @Override
+                public HttpMethod getMethod() {
+                    return httpMethod;
+                }
+
+                @Override
+                public URI getURI() {
+                    return uri;
+                }
+
+                @Override
+                public HttpHeaders getHeaders() {
+                    return headers;
+                }
+            };
+        }
+    }
+}
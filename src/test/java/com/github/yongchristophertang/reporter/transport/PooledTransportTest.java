@@ -0,0 +1,70 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.transport;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.InetSocketAddress;
+
+import static org.hamcrest.CoreMatchers.is;
+
+/**
+ * Tests for {@link PooledTransport}
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class PooledTransportTest {
+    private HttpServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api", exchange -> {
+            while (exchange.getRequestBody().read() >= 0) {
+                // drain the request body so that the connection can be reused
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testConnectionIsReusedAcrossRequests() throws Exception {
+        try (PooledTransport transport = new PooledTransport(4, 4, 30000, 1000, 1000)) {
+            RestTemplate restTemplate = new RestTemplate(transport.getRequestFactory());
+            String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/api";
+            for (int i = 0; i < 10; i++) {
+                restTemplate.postForEntity(url, "{}", String.class);
+            }
+            Assert.assertThat("Requests", transport.getRequestCount(), is(10L));
+            Assert.assertThat("Connections", transport.getConnectionCount(), is(1L));
+            Assert.assertThat("Idle connections in pool", transport.getPoolStats().getAvailable(), is(1));
+        }
+    }
+}
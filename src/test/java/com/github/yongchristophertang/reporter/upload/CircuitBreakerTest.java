@@ -0,0 +1,79 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.upload;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.is;
+
+/**
+ * Tests for {@link CircuitBreaker}
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class CircuitBreakerTest {
+    private final AtomicLong clock = new AtomicLong();
+    private final CircuitBreaker breaker = new CircuitBreaker(2, 100, clock::get);
+
+    @Test
+    public void testCircuitOpensAfterConsecutiveFailures() {
+        breaker.onFailure();
+        breaker.onSuccess();
+        breaker.onFailure();
+        Assert.assertThat("Closed after interrupted failures", breaker.getState(), is(CircuitBreaker.State.CLOSED));
+        breaker.onFailure();
+        Assert.assertThat("Open after consecutive failures", breaker.getState(), is(CircuitBreaker.State.OPEN));
+        Assert.assertThat("Request rejected", breaker.allowRequest(), is(false));
+    }
+
+    @Test
+    public void testSingleProbeAfterOpenDuration() {
+        breaker.onFailure();
+        breaker.onFailure();
+        clock.addAndGet(100);
+        Assert.assertThat("Probe allowed", breaker.allowRequest(), is(true));
+        Assert.assertThat("Second request rejected while probing", breaker.allowRequest(), is(false));
+        breaker.onSuccess();
+        Assert.assertThat("Closed after successful probe", breaker.getState(), is(CircuitBreaker.State.CLOSED));
+        Assert.assertThat("Request allowed", breaker.allowRequest(), is(true));
+    }
+
+    @Test
+    public void testFailedProbeReopensCircuit() {
+        breaker.onFailure();
+        breaker.onFailure();
+        clock.addAndGet(100);
+        breaker.allowRequest();
+        breaker.onFailure();
+        Assert.assertThat("Open after failed probe", breaker.getState(), is(CircuitBreaker.State.OPEN));
+        clock.addAndGet(50);
+        Assert.assertThat("Request rejected", breaker.allowRequest(), is(false));
+    }
+
+    @Test
+    public void testNonPositiveThresholdNeverOpens() {
+        CircuitBreaker disabled = new CircuitBreaker(0, 100, clock::get);
+        for (int i = 0; i < 100; i++) {
+            disabled.onFailure();
+        }
+        Assert.assertThat("Request allowed", disabled.allowRequest(), is(true));
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.upload;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.is;
+
+/**
+ * Tests for {@link ConcurrencyLimiter}
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class ConcurrencyLimiterTest {
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private ConcurrencyLimiter adaptive(int initialLimit) {
+        return new ConcurrencyLimiter(true, initialLimit, 1, 8, 2.0, 0.5, 0, 0, clock::get);
+    }
+
+    @Test
+    public void testLimitGrowsOnlyWhileInUse() {
+        ConcurrencyLimiter limiter = adaptive(4);
+        for (int i = 0; i < 100; i++) {
+            limiter.acquire(null);
+            limiter.release(10 * MILLIS, false);
+        }
+        Assert.assertThat("Limit of a single attempt at a time", limiter.getLimit(), is(4));
+
+        for (int round = 0; round < 40; round++) {
+            int permits = limiter.getLimit();
+            for (int i = 0; i < permits; i++) {
+                limiter.acquire(null);
+            }
+            for (int i = 0; i < permits; i++) {
+                limiter.release(10 * MILLIS, false);
+            }
+        }
+        Assert.assertThat("Limit raised up to its maximum", limiter.getLimit(), is(8));
+    }
+
+    @Test
+    public void testLimitBacksOffOncePerRoundTrip() {
+        ConcurrencyLimiter limiter = adaptive(8);
+        clock.addAndGet(1000 * MILLIS);
+        limiter.acquire(null);
+        limiter.acquire(null);
+        limiter.release(10 * MILLIS, true);
+        Assert.assertThat("Limit halved", limiter.getLimit(), is(4));
+        limiter.release(10 * MILLIS, true);
+        Assert.assertThat("Limit kept within the round trip", limiter.getLimit(), is(4));
+
+        for (int i = 0; i < 5; i++) {
+            clock.addAndGet(10 * MILLIS);
+            limiter.acquire(null);
+            limiter.release(10 * MILLIS, true);
+        }
+        Assert.assertThat("Limit kept at its minimum", limiter.getLimit(), is(1));
+    }
+
+    @Test
+    public void testSlowAttemptCountsAsOverload() {
+        ConcurrencyLimiter limiter = adaptive(8);
+        clock.addAndGet(1000 * MILLIS);
+        limiter.acquire(null);
+        limiter.release(10 * MILLIS, false);
+        limiter.acquire(null);
+        limiter.release(15 * MILLIS, false);
+        Assert.assertThat("Limit kept within tolerance", limiter.getLimit(), is(8));
+        limiter.acquire(null);
+        limiter.release(50 * MILLIS, false);
+        Assert.assertThat("Limit halved", limiter.getLimit(), is(4));
+    }
+
+    @Test
+    public void testPermitOfCancelledWaiterIsPassedOn() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(false, 0, 1, 1, 2.0, 0.5, 0, 0, clock::get);
+        Assert.assertThat("First granted", limiter.acquire(null).isDone(), is(true));
+        CompletableFuture<Void> second = limiter.acquire(null);
+        CompletableFuture<Void> third = limiter.acquire(null);
+        Assert.assertThat("Second waiting", second.isDone(), is(false));
+        second.cancel(false);
+        limiter.cancel();
+        Assert.assertThat("Third granted", third.isDone() && !third.isCompletedExceptionally(), is(true));
+        Assert.assertThat("In flight", limiter.getInFlight(), is(1));
+    }
+
+    @Test
+    public void testRateCapDelaysAttemptsBeyondBurst() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(false, 0, 1, 8, 2.0, 0.5, 20, 2, clock::get);
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+        try {
+            Assert.assertThat("First within burst", limiter.acquire(timer).isDone(), is(true));
+            Assert.assertThat("Second within burst", limiter.acquire(timer).isDone(), is(true));
+            CompletableFuture<Void> third = limiter.acquire(timer);
+            Assert.assertThat("Third delayed", third.isDone(), is(false));
+            third.get(1, TimeUnit.SECONDS);
+        } finally {
+            timer.shutdownNow();
+        }
+    }
+}
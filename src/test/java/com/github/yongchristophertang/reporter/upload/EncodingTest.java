@@ -0,0 +1,89 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.upload;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.yongchristophertang.reporter.testcase.TestCaseResult;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+
+/**
+ * Tests for {@link Encoding}
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class EncodingTest {
+    private final ObjectMapper json = Encoding.JSON.createMapper();
+
+    private static TestCaseResult result(String caseName) {
+        return new TestCaseResult.TestCaseResultBuilder(caseName, 12, 2, Arrays.asList("first", "second"))
+                .suiteName("suite").testName("test").className("com.example.SampleTest").bug("BUG-1")
+                .caseDescription("description").expectedResult("expected").createTestCaseResult();
+    }
+
+    @Test
+    public void testBinaryEncodingsCarryTheSameFields() throws Exception {
+        TestCaseResult result = result("case");
+        JsonNode expected = json.readTree(json.writeValueAsBytes(result));
+        for (Encoding encoding : Arrays.asList(Encoding.SMILE, Encoding.CBOR)) {
+            ObjectMapper mapper = encoding.createMapper();
+            byte[] encoded = mapper.writeValueAsBytes(result);
+            Assert.assertThat(encoding + " fields", mapper.readTree(encoded), is(expected));
+            Assert.assertTrue(encoding + " smaller than json", encoded.length < json.writeValueAsBytes(result).length);
+        }
+    }
+
+    @Test
+    public void testBinaryBatchIsASequenceOfRecords() throws Exception {
+        for (Encoding encoding : Arrays.asList(Encoding.SMILE, Encoding.CBOR)) {
+            ObjectMapper mapper = encoding.createMapper();
+            List<ResultBatch> batches = new ArrayList<>();
+            ResultBatcher batcher = new ResultBatcher(encoding.getBatchFormat(BatchFormat.JSON_ARRAY), 10,
+                    Long.MAX_VALUE, 0, mapper, batches::add);
+            for (int i = 0; i < 3; i++) {
+                batcher.add(result("case" + i));
+            }
+            batcher.close();
+
+            MappingIterator<JsonNode> records = mapper.reader(JsonNode.class).readValues(batches.get(0).getBody());
+            List<String> names = new ArrayList<>();
+            while (records.hasNextValue()) {
+                names.add(records.nextValue().get("caseName").asText());
+            }
+            Assert.assertThat(encoding + " records", names, is(Arrays.asList("case0", "case1", "case2")));
+            Assert.assertThat(encoding + " content type", encoding.getBatchContentType(batches.get(0).getFormat()),
+                    is(encoding == Encoding.SMILE ? "application/x-jackson-smile" : "application/cbor-seq"));
+        }
+    }
+
+    @Test
+    public void testJsonKeepsConfiguredBatchFormat() {
+        Assert.assertThat("Format", Encoding.JSON.getBatchFormat(BatchFormat.NDJSON), is(BatchFormat.NDJSON));
+        Assert.assertThat("Content type", Encoding.JSON.getBatchContentType(BatchFormat.NDJSON),
+                is("application/x-ndjson"));
+        Assert.assertThat("Parsed", Encoding.of("Smile"), is(Encoding.SMILE));
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.upload;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.yongchristophertang.reporter.testcase.TestCaseResult;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+
+/**
+ * Tests for {@link ResultBatcher}
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class ResultBatcherTest {
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private static TestCaseResult result(String caseName) {
+        return new TestCaseResult.TestCaseResultBuilder(caseName, 1, 1, Collections.emptyList())
+                .suiteName("suite").createTestCaseResult();
+    }
+
+    @Test
+    public void testBatchSplitByMaxRecords() throws Exception {
+        List<ResultBatch> batches = new ArrayList<>();
+        ResultBatcher batcher = new ResultBatcher(BatchFormat.JSON_ARRAY, 2, Long.MAX_VALUE, 0, mapper, batches::add);
+        for (int i = 0; i < 5; i++) {
+            batcher.add(result("case" + i));
+        }
+        Assert.assertThat("Batches before flush", batches.size(), is(2));
+        batcher.close();
+        Assert.assertThat("Batches after flush", batches.size(), is(3));
+        Assert.assertThat("Last batch size", batches.get(2).size(), is(1));
+    }
+
+    @Test
+    public void testBatchSplitByMaxBytes() throws Exception {
+        int recordBytes = mapper.writeValueAsBytes(result("case0")).length;
+        List<ResultBatch> batches = new ArrayList<>();
+        ResultBatcher batcher = new ResultBatcher(BatchFormat.NDJSON, 100, recordBytes * 2 + 2, 0, mapper,
+                batches::add);
+        for (int i = 0; i < 5; i++) {
+            batcher.add(result("case" + i));
+        }
+        batcher.close();
+        Assert.assertThat("Batch count", batches.size(), is(3));
+        for (ResultBatch batch : batches) {
+            Assert.assertTrue("Batch within limit", batch.getBody().length <= recordBytes * 2 + 2);
+        }
+    }
+
+    @Test
+    public void testJsonArrayBodyIsReadable() throws Exception {
+        List<ResultBatch> batches = new ArrayList<>();
+        ResultBatcher batcher = new ResultBatcher(BatchFormat.JSON_ARRAY, 10, Long.MAX_VALUE, 0, mapper,
+                batches::add);
+        batcher.add(result("case0"));
+        batcher.add(result("case1"));
+        batcher.close();
+        List<?> records = mapper.readValue(batches.get(0).getBody(), List.class);
+        Assert.assertThat("Records in body", records.size(), is(2));
+    }
+
+    @Test
+    public void testNdjsonBodyHasOneRecordPerLine() throws Exception {
+        List<ResultBatch> batches = new ArrayList<>();
+        ResultBatcher batcher = new ResultBatcher(BatchFormat.NDJSON, 10, Long.MAX_VALUE, 0, mapper, batches::add);
+        batcher.add(result("case0"));
+        batcher.add(result("case1"));
+        batcher.close();
+        String[] lines = new String(batches.get(0).getBody(), StandardCharsets.UTF_8).split("\n");
+        Assert.assertThat("Lines in body", lines.length, is(2));
+        Assert.assertThat("Second line", mapper.readTree(lines[1]).get("caseName").asText(), is("case1"));
+    }
+
+    @Test
+    public void testLingeringBatchIsFlushed() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        ResultBatcher batcher = new ResultBatcher(BatchFormat.JSON_ARRAY, 10, Long.MAX_VALUE, 50, mapper,
+                b -> latch.countDown());
+        batcher.add(result("case0"));
+        Assert.assertTrue("Batch flushed after linger", latch.await(5, TimeUnit.SECONDS));
+        batcher.close();
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.upload;
+
+import com.github.yongchristophertang.reporter.metrics.UploadMetrics;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+
+/**
+ * Tests for {@link RetryingUploader}
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class RetryingUploaderTest {
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private final RetryPolicy policy = new ExponentialBackoffRetryPolicy(3, 1000, 10, 100, 2.0, 0.5,
+            new HashSet<>(Arrays.asList(500, 503)));
+    private final UploadMetrics metrics = new UploadMetrics();
+    private final RetryingUploader uploader = new RetryingUploader(executor, policy, new CircuitBreaker(0, 0),
+            metrics);
+
+    @After
+    public void tearDown() {
+        uploader.close();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testRetryableFailureIsAttemptedAgain() {
+        AtomicInteger attempts = new AtomicInteger();
+        boolean succeeded = uploader.submit(() -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE);
+            }
+            return new ResponseEntity<>(HttpStatus.OK);
+        }).join();
+        Assert.assertThat("Upload succeeded", succeeded, is(true));
+        Assert.assertThat("Attempts", attempts.get(), is(3));
+        Assert.assertThat("Attempts counted", metrics.getAttempts(), is(3L));
+        Assert.assertThat("Retries counted", metrics.getRetries(), is(2L));
+        Assert.assertThat("Uploads counted", metrics.getUploads(), is(1L));
+        Assert.assertThat("Nothing left in flight", metrics.getInFlight() + metrics.getQueued(), is(0));
+    }
+
+    @Test
+    public void testAttemptsAreLimited() {
+        AtomicInteger attempts = new AtomicInteger();
+        boolean succeeded = uploader.submit(() -> {
+            attempts.incrementAndGet();
+            throw new ResourceAccessException("refused");
+        }).join();
+        Assert.assertThat("Upload failed", succeeded, is(false));
+        Assert.assertThat("Attempts", attempts.get(), is(3));
+        Assert.assertThat("Failures counted", metrics.getFailures(), is(1L));
+    }
+
+    @Test
+    public void testNonRetryableStatusIsNotAttemptedAgain() {
+        AtomicInteger attempts = new AtomicInteger();
+        boolean succeeded = uploader.submit(() -> {
+            attempts.incrementAndGet();
+            throw new HttpClientErrorException(HttpStatus.BAD_REQUEST);
+        }).join();
+        Assert.assertThat("Upload failed", succeeded, is(false));
+        Assert.assertThat("Attempts", attempts.get(), is(1));
+    }
+
+    @Test
+    public void testOpenCircuitSkipsUpload() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 60000);
+        breaker.onFailure();
+        RetryingUploader open = new RetryingUploader(executor, policy, breaker);
+        AtomicInteger attempts = new AtomicInteger();
+        boolean succeeded = open.submit(() -> {
+            attempts.incrementAndGet();
+            return new ResponseEntity<>(HttpStatus.OK);
+        }).join();
+        open.close();
+        Assert.assertThat("Upload failed", succeeded, is(false));
+        Assert.assertThat("Attempts", attempts.get(), is(0));
+    }
+
+    @Test
+    public void testSlowAttemptIsHedged() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        RetryingUploader hedged = new RetryingUploader(executor, policy, new CircuitBreaker(0, 0), metrics,
+                new HedgePolicy(95, 50, 100));
+        AtomicInteger copies = new AtomicInteger();
+        long start = System.currentTimeMillis();
+        boolean succeeded = hedged.submit(() -> {
+            if (copies.incrementAndGet() == 1) {
+                release.await();
+            }
+            return new ResponseEntity<>(HttpStatus.OK);
+        }).get(5, TimeUnit.SECONDS);
+        release.countDown();
+        hedged.close();
+        Assert.assertThat("Upload succeeded", succeeded, is(true));
+        Assert.assertThat("Completed by the second copy", System.currentTimeMillis() - start < 2000, is(true));
+        Assert.assertThat("Copies sent", copies.get(), is(2));
+        Assert.assertThat("Hedges counted", metrics.getHedges(), is(1L));
+        Assert.assertThat("Retries counted", metrics.getRetries(), is(0L));
+    }
+
+    @Test
+    public void testHedgedAttemptIsRetriedOnceBothCopiesFailed() {
+        RetryingUploader hedged = new RetryingUploader(executor, policy, new CircuitBreaker(0, 0), metrics,
+                new HedgePolicy(95, 10, 100));
+        AtomicInteger copies = new AtomicInteger();
+        boolean succeeded = hedged.submit(() -> {
+            Thread.sleep(50);
+            copies.incrementAndGet();
+            throw new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE);
+        }).join();
+        hedged.close();
+        Assert.assertThat("Upload failed", succeeded, is(false));
+        Assert.assertThat("Two copies per attempt", copies.get(), is(6));
+        Assert.assertThat("Retries counted", metrics.getRetries(), is(2L));
+    }
+
+    @Test
+    public void testLimiterBoundsAttemptsInFlight() {
+        ExecutorService workers = Executors.newFixedThreadPool(4);
+        RetryingUploader limited = new RetryingUploader(workers, policy, new CircuitBreaker(0, 0), metrics, null,
+                new ConcurrencyLimiter(false, 0, 1, 1, 2.0, 0.5, 0, 0));
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        List<CompletableFuture<Boolean>> uploads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            uploads.add(limited.submit(() -> {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                Thread.sleep(5);
+                inFlight.decrementAndGet();
+                return new ResponseEntity<>(HttpStatus.OK);
+            }));
+        }
+        uploads.forEach(CompletableFuture::join);
+        limited.close();
+        workers.shutdownNow();
+        Assert.assertThat("Uploads", metrics.getUploads(), is(8L));
+        Assert.assertThat("Attempts in flight", maxInFlight.get(), is(1));
+        Assert.assertThat("Limit exposed", metrics.getConcurrencyLimit(), is(1));
+    }
+
+    @Test
+    public void testAsyncUploadsDoNotHoldWorkers() {
+        ScheduledExecutorService storage = Executors.newSingleThreadScheduledExecutor();
+        AtomicInteger attempts = new AtomicInteger();
+        List<CompletableFuture<Boolean>> uploads = new ArrayList<>();
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 200; i++) {
+            uploads.add(uploader.submit((AsyncUpload) () -> {
+                CompletableFuture<ResponseEntity<String>> response = new CompletableFuture<>();
+                HttpStatus status = attempts.incrementAndGet() % 10 == 0 ? HttpStatus.SERVICE_UNAVAILABLE :
+                        HttpStatus.OK;
+                storage.schedule(() -> response.complete(new ResponseEntity<>(status)), 50, TimeUnit.MILLISECONDS);
+                return response;
+            }));
+        }
+        uploads.forEach(CompletableFuture::join);
+        storage.shutdownNow();
+        Assert.assertThat("Uploads", metrics.getUploads(), is(200L));
+        Assert.assertThat("Failed attempts retried", metrics.getRetries() > 0, is(true));
+        Assert.assertThat("Attempts overlapped beyond the workers", System.currentTimeMillis() - start < 2000,
+                is(true));
+    }
+
+    @Test
+    public void testRetriesDoNotWaitForRoomOnTheTimer() throws InterruptedException {
+        ExecutorService blocking = UploadExecutors.create(UploadExecutors.Type.PLATFORM, 1, 1,
+                UploadExecutors.Backpressure.BLOCK);
+        RetryingUploader retrying = new RetryingUploader(blocking, new ExponentialBackoffRetryPolicy(3, 1000, 200,
+                200, 2.0, 0.0, new HashSet<>(Arrays.asList(500, 503))), new CircuitBreaker(0, 0), metrics);
+        CountDownLatch failed = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Boolean> upload = retrying.submit(() -> {
+            if (failed.getCount() > 0) {
+                failed.countDown();
+                throw new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE);
+            }
+            return new ResponseEntity<>(HttpStatus.OK);
+        });
+        failed.await();
+        for (int i = 0; i < 2; i++) {
+            retrying.submit(() -> {
+                release.await();
+                return new ResponseEntity<>(HttpStatus.OK);
+            });
+        }
+
+        Thread.sleep(400);
+        boolean timerWaiting = Thread.getAllStackTraces().entrySet().stream()
+                .filter(e -> e.getKey().getName().equals("report-storage-retry"))
+                .flatMap(e -> Arrays.stream(e.getValue()))
+                .anyMatch(frame -> frame.getMethodName().equals("put"));
+        Assert.assertThat("Timer waiting for room", timerWaiting, is(false));
+        Assert.assertThat("Retry waiting for room", upload.isDone(), is(false));
+
+        release.countDown();
+        Assert.assertThat("Upload succeeded once there is room", upload.join(), is(true));
+        retrying.close();
+        blocking.shutdownNow();
+    }
+
+    @Test
+    public void testAsyncAnswersHandledByIoThreadWhileExecutorIsFull() throws Exception {
+        ExecutorService blocking = UploadExecutors.create(UploadExecutors.Type.PLATFORM, 1, 1,
+                UploadExecutors.Backpressure.BLOCK);
+        RetryingUploader retrying = new RetryingUploader(blocking, policy, new CircuitBreaker(0, 0), metrics);
+        ScheduledExecutorService io = Executors.newSingleThreadScheduledExecutor();
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 2; i++) {
+            retrying.submit(() -> {
+                release.await();
+                return new ResponseEntity<>(HttpStatus.OK);
+            });
+        }
+
+        CompletableFuture<Boolean> upload = retrying.submit((AsyncUpload) () -> {
+            CompletableFuture<ResponseEntity<String>> response = new CompletableFuture<>();
+            io.schedule(() -> response.complete(new ResponseEntity<>(HttpStatus.OK)), 10, TimeUnit.MILLISECONDS);
+            return response;
+        });
+        Assert.assertThat("Answer handled while workers and queue are taken", upload.get(5, TimeUnit.SECONDS),
+                is(true));
+
+        release.countDown();
+        io.shutdownNow();
+        retrying.close();
+        blocking.shutdownNow();
+    }
+
+    @Test
+    public void testBackoffGrowsAndIsCapped() {
+        for (int attempt = 1; attempt < 10; attempt++) {
+            long backoff = policy.getBackoffMillis(attempt);
+            long expected = Math.min(100, 10 << (attempt - 1));
+            Assert.assertTrue("Backoff within jitter of " + expected, backoff <= expected && backoff >= expected / 2);
+        }
+    }
+}
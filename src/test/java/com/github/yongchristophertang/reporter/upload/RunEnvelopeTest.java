@@ -0,0 +1,85 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.upload;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.yongchristophertang.reporter.testcase.StringDictionary;
+import com.github.yongchristophertang.reporter.testcase.TestCaseResult;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+
+/**
+ * Tests for {@link RunEnvelope}
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class RunEnvelopeTest {
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final StringDictionary dictionary = new StringDictionary();
+
+    private TestCaseResult result(String className, String caseName) {
+        return new TestCaseResult.TestCaseResultBuilder(caseName, 1, 1, Collections.emptyList())
+                .suiteName(dictionary.intern("suite")).testName(dictionary.intern("test"))
+                .className(dictionary.intern(className)).version("1.0").createTestCaseResult();
+    }
+
+    @Test
+    public void testNamesAreSentOncePerEnvelope() throws Exception {
+        List<ResultBatch> batches = new ArrayList<>();
+        ResultBatcher batcher = new ResultBatcher(new RunEnvelope(dictionary, "1.0"), 3, Long.MAX_VALUE, 0,
+                batches::add);
+        batcher.add(result("a.b.C", "first"));
+        batcher.add(result("a.b.C", "second"));
+        batcher.add(result("a.b.D", "third"));
+        batcher.add(result("a.b.E", "fourth"));
+        batcher.close();
+        Assert.assertThat("Envelopes", batches.size(), is(2));
+
+        JsonNode envelope = mapper.readTree(batches.get(0).getBody());
+        Assert.assertThat("Version", envelope.at("/run/version").asText(), is("1.0"));
+        JsonNode names = envelope.at("/run/dictionary");
+        Assert.assertThat("Referred names only", names.size(), is(4));
+        JsonNode record = envelope.at("/results/2");
+        Assert.assertThat("Suite", names.get(record.get("suiteId").asText()).asText(), is("suite"));
+        Assert.assertThat("Class", names.get(record.get("classId").asText()).asText(), is("a.b.D"));
+        Assert.assertThat("Case", record.get("caseName").asText(), is("third"));
+        Assert.assertThat("No version per record", record.has("version"), is(false));
+        Assert.assertThat("No names per record", record.has("className"), is(false));
+
+        JsonNode next = mapper.readTree(batches.get(1).getBody());
+        Assert.assertThat("Ids stable across envelopes", next.at("/results/0/suiteId").asInt(),
+                is(record.get("suiteId").asInt()));
+        Assert.assertThat("Entries of the next envelope", next.at("/run/dictionary").size(), is(3));
+    }
+
+    @Test
+    public void testDictionarySharesInstances() {
+        String name = dictionary.intern(new String("a.b.C"));
+        Assert.assertThat("Same instance", dictionary.intern(new String("a.b.C")), sameInstance(name));
+        Assert.assertThat("Same id", dictionary.id(new String("a.b.C")), is(dictionary.id(name)));
+        Assert.assertThat("Null", dictionary.intern(null), is((String) null));
+    }
+}
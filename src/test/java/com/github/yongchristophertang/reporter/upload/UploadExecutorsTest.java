@@ -0,0 +1,118 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.yongchristophertang.reporter.upload;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.CoreMatchers.is;
+
+/**
+ * Tests for {@link UploadExecutors}
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class UploadExecutorsTest {
+
+    @Test
+    public void testBlockingBackpressure() throws Exception {
+        ExecutorService executor = UploadExecutors.create(UploadExecutors.Type.PLATFORM, 1, 1,
+                UploadExecutors.Backpressure.BLOCK);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> await(release));
+        executor.execute(() -> await(release));
+
+        AtomicBoolean submitted = new AtomicBoolean();
+        Thread submitter = new Thread(() -> {
+            executor.execute(() -> {
+            });
+            submitted.set(true);
+        });
+        submitter.start();
+        submitter.join(200);
+        Assert.assertThat("Submitter blocked while workers and queue are full", submitted.get(), is(false));
+
+        release.countDown();
+        submitter.join(5000);
+        Assert.assertThat("Submitter released", submitted.get(), is(true));
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testCallerRunsBackpressure() throws Exception {
+        ExecutorService executor = UploadExecutors.create(UploadExecutors.Type.PLATFORM, 1, 1,
+                UploadExecutors.Backpressure.CALLER_RUNS);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> await(release));
+        executor.execute(() -> await(release));
+
+        AtomicReference<Thread> runner = new AtomicReference<>();
+        executor.execute(() -> runner.set(Thread.currentThread()));
+        Assert.assertThat("Task run by submitter", runner.get(), is(Thread.currentThread()));
+
+        release.countDown();
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testOfferDoesNotWaitForRoom() throws Exception {
+        for (UploadExecutors.Backpressure backpressure : UploadExecutors.Backpressure.values()) {
+            ExecutorService executor = UploadExecutors.create(UploadExecutors.Type.PLATFORM, 1, 1, backpressure);
+            CountDownLatch release = new CountDownLatch(1);
+            executor.execute(() -> await(release));
+            executor.execute(() -> await(release));
+
+            AtomicBoolean run = new AtomicBoolean();
+            Assert.assertThat("Offered to a full executor", UploadExecutors.offer(executor, () -> run.set(true)),
+                    is(false));
+            Assert.assertThat("Task run by submitter", run.get(), is(false));
+
+            release.countDown();
+            executor.shutdown();
+            Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testVirtualTypeRunsTasks() throws Exception {
+        ExecutorService executor = UploadExecutors.create(UploadExecutors.Type.VIRTUAL, 2, 2,
+                UploadExecutors.Backpressure.BLOCK);
+        CountDownLatch done = new CountDownLatch(10);
+        for (int i = 0; i < 10; i++) {
+            executor.execute(done::countDown);
+        }
+        Assert.assertTrue("All tasks run", done.await(5, TimeUnit.SECONDS));
+        executor.shutdown();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
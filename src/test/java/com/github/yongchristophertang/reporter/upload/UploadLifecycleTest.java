@@ -0,0 +1,155 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.yongchristophertang.reporter.upload;
+
+import com.github.yongchristophertang.reporter.testcase.TestCaseResult;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link UploadLifecycle}
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class UploadLifecycleTest {
+    private final List<TestCaseResult> fallback = Collections.synchronizedList(new ArrayList<>());
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final UploadLifecycle lifecycle = createLifecycle();
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        lifecycle.close();
+    }
+
+    @Test
+    public void testSucceededUploadsAreNotHandedOver() {
+        lifecycle.submit(() -> new ResponseEntity<>(HttpStatus.OK), results("a", "b"));
+        Assert.assertThat("Abandoned", lifecycle.drain(1000), is(0L));
+        Assert.assertThat("Handed over", fallback.size(), is(0));
+        Assert.assertThat("Pending", lifecycle.getPendingCount(), is(0));
+    }
+
+    @Test
+    public void testFailedUploadsAreHandedOver() {
+        boolean succeeded = lifecycle.submit(() -> {
+            throw new HttpClientErrorException(HttpStatus.BAD_REQUEST);
+        }, results("a", "b")).join();
+        Assert.assertThat("Upload succeeded", succeeded, is(false));
+        Assert.assertThat("Handed over", fallback.size(), is(2));
+        Assert.assertThat("Failed uploads", lifecycle.getFailedUploads(), is(1L));
+        Assert.assertThat("Failed results", lifecycle.getFailedResults(), is(2L));
+    }
+
+    @Test
+    public void testPendingUploadsAreHandedOverAtDeadline() {
+        CompletableFuture<Boolean> upload = lifecycle.submit(() -> {
+            release.await();
+            return new ResponseEntity<>(HttpStatus.OK);
+        }, results("a", "b", "c"));
+        lifecycle.submit(() -> new ResponseEntity<>(HttpStatus.OK), results("d"));
+
+        Assert.assertThat("Abandoned", lifecycle.drain(200), is(3L));
+        Assert.assertThat("Handed over", fallback.size(), is(3));
+        Assert.assertThat("Pending", lifecycle.getPendingCount(), is(0));
+
+        release.countDown();
+        Assert.assertThat("Late upload succeeded", upload.join(), is(true));
+        Assert.assertThat("Handed over once", fallback.size(), is(3));
+        Assert.assertThat("Abandoned results", lifecycle.getAbandonedResults(), is(3L));
+    }
+
+    @Test
+    public void testUploadsFailingToStartAreHandedOver() {
+        RetryingUploader uploader = mock(RetryingUploader.class);
+        when(uploader.submit(any())).thenThrow(new RejectedExecutionException());
+        UploadLifecycle refusing = new UploadLifecycle(Executors.newSingleThreadExecutor(), uploader,
+                fallback::addAll, 50);
+
+        CompletableFuture<Boolean> upload = refusing.submit(() -> new ResponseEntity<>(HttpStatus.OK),
+                results("a", "b"));
+        Assert.assertThat("Upload completed", upload.isDone(), is(true));
+        Assert.assertThat("Upload succeeded", upload.join(), is(false));
+        Assert.assertThat("Handed over", fallback.size(), is(2));
+        Assert.assertThat("Pending", refusing.getPendingCount(), is(0));
+        Assert.assertThat("Abandoned", refusing.drain(1000), is(0L));
+        refusing.close();
+    }
+
+    @Test
+    public void testFollowUpsDoNotBlockTheWorkerOnItsOwnQueue() {
+        ExecutorService executor = UploadExecutors.create(UploadExecutors.Type.PLATFORM, 1, 1,
+                UploadExecutors.Backpressure.BLOCK);
+        RetryPolicy policy = new ExponentialBackoffRetryPolicy(1, 5000, 10, 100, 2.0, 0.5, Collections.emptySet());
+        UploadLifecycle blocking = new UploadLifecycle(executor, new RetryingUploader(executor, policy,
+                new CircuitBreaker(0, 0)), fallback::addAll, 50);
+
+        CompletableFuture<Boolean> result = blocking.submit(() -> {
+            release.await();
+            return new ResponseEntity<>(HttpStatus.OK);
+        }, results("a"));
+        blocking.submit(() -> new ResponseEntity<>(HttpStatus.OK), results("b"));
+        List<CompletableFuture<Boolean>> followUps = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            followUps.add(blocking.submitAfter(result, () -> new ResponseEntity<>(HttpStatus.OK)));
+        }
+        release.countDown();
+
+        Assert.assertThat("Abandoned", blocking.drain(5000), is(0L));
+        Assert.assertThat("Follow-ups succeeded", followUps.stream().allMatch(CompletableFuture::join), is(true));
+        blocking.close();
+    }
+
+    private UploadLifecycle createLifecycle() {
+        RetryPolicy policy = new ExponentialBackoffRetryPolicy(1, 5000, 10, 100, 2.0, 0.5,
+                new HashSet<>(Arrays.asList(500, 503)));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        return new UploadLifecycle(executor, new RetryingUploader(executor, policy, new CircuitBreaker(0, 0)),
+                fallback::addAll, 50);
+    }
+
+    private static List<TestCaseResult> results(String... names) {
+        List<TestCaseResult> results = new ArrayList<>();
+        for (String name : names) {
+            results.add(new TestCaseResult.TestCaseResultBuilder(name, 0, 1, Collections.emptyList())
+                    .createTestCaseResult());
+        }
+        return results;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.yongchristophertang.reporter.upload;
+
+import com.typesafe.config.ConfigFactory;
+import org.junit.Assert;
+import org.junit.Test;
+import org.testng.ITestResult;
+
+import java.util.stream.IntStream;
+
+import static org.hamcrest.CoreMatchers.is;
+
+/**
+ * Tests for {@link UploadPolicy}
+ *
+ * @author Yong Tang
+ * @since 0.1
+ */
+public class UploadPolicyTest {
+    private final UploadPolicy policy = new UploadPolicy(UploadPolicy.Detail.SLIM, UploadPolicy.Detail.FULL,
+            UploadPolicy.Detail.FULL, UploadPolicy.Detail.SAMPLED, UploadPolicy.Detail.DROP, 0.1);
+
+    @Test
+    public void testDetailByStatus() {
+        Assert.assertThat("Success", policy.detailOf(ITestResult.SUCCESS, false), is(UploadPolicy.Detail.SLIM));
+        Assert.assertThat("Failure", policy.detailOf(ITestResult.FAILURE, false), is(UploadPolicy.Detail.FULL));
+        Assert.assertThat("Within success percentage", policy.detailOf(ITestResult.SUCCESS_PERCENTAGE_FAILURE,
+                false), is(UploadPolicy.Detail.SAMPLED));
+        Assert.assertThat("Passed configuration", policy.detailOf(ITestResult.SUCCESS, true),
+                is(UploadPolicy.Detail.DROP));
+        Assert.assertThat("Failed configuration", policy.detailOf(ITestResult.FAILURE, true),
+                is(UploadPolicy.Detail.FULL));
+    }
+
+    @Test
+    public void testSamplingIsStableAndNearRate() {
+        long sampled = IntStream.range(0, 10000).filter(i -> policy.isSampled("suite", "a.b.C", "case" + i)).count();
+        Assert.assertThat("Sampled about a tenth: " + sampled, sampled > 800 && sampled < 1200, is(true));
+        Assert.assertThat("Same case sampled alike", policy.isSampled("suite", "a.b.C", "case42"),
+                is(policy.isSampled("suite", "a.b.C", "case42")));
+    }
+
+    @Test
+    public void testDefaultsUploadEverythingInFull() {
+        UploadPolicy defaults = UploadPolicy.of(ConfigFactory.load().getConfig("report.storage.policy"));
+        for (int status : new int[]{ITestResult.SUCCESS, ITestResult.FAILURE, ITestResult.SKIP}) {
+            Assert.assertThat("Status " + status, defaults.detailOf(status, true), is(UploadPolicy.Detail.FULL));
+        }
+    }
+}